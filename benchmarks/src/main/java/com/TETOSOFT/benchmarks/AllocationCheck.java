@@ -0,0 +1,121 @@
+package com.TETOSOFT.benchmarks;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.lang.management.ManagementFactory;
+
+import com.TETOSOFT.tilegame.GameEngine;
+import com.TETOSOFT.tilegame.TileMap;
+
+/**
+ * Checks that the steady-state game loop doesn't allocate. It plays
+ * the game headless, warms up, and then measures the bytes allocated
+ * by every tick with the HotSpot ThreadMXBean. Ticks that load a new
+ * map (after a death or a goal) are skipped, since loading a map is
+ * expected to allocate.
+ *
+ * <p>Exits with status 1 if the ticks allocate. The JIT can allocate
+ * in a rare tick on its own, for example when it deoptimizes a method
+ * and has to rebuild objects it had optimized away, so up to one tick
+ * in NOISE_TICKS is tolerated; code that allocates shows up in
+ * every tick. Running with -Xint (no JIT) tolerates none. Drawing into
+ * an offscreen image is measured too, but only reported, since Java2D
+ * allocates inside drawString and the image pipelines.
+ *
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar com.TETOSOFT.benchmarks.AllocationCheck [ticks]
+ * </pre>
+ */
+public class AllocationCheck {
+
+    private static final int WARMUP_TICKS = 20000;
+    private static final int DEFAULT_TICKS = 50000;
+    private static final int DRAW_FRAMES = 1000;
+    // one allocating tick in this many is put down to the JIT
+    private static final int NOISE_TICKS = 10000;
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+        int numTicks = DEFAULT_TICKS;
+        if (args.length > 0) {
+            numTicks = Integer.parseInt(args[0]);
+        }
+
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean)
+            ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long overhead = getOverhead(threads, threadId);
+
+        GameEngine engine = new GameEngine();
+        engine.initHeadless();
+        long tickTime = engine.getTickTime();
+        for (int i = 0; i < WARMUP_TICKS && engine.isRunning(); i++) {
+            engine.update(tickTime);
+        }
+
+        int measured = 0;
+        int allocatingTicks = 0;
+        long maxBytes = 0;
+        for (int i = 0; i < numTicks && engine.isRunning(); i++) {
+            TileMap map = engine.getMap();
+            long before = threads.getThreadAllocatedBytes(threadId);
+            engine.update(tickTime);
+            long bytes = threads.getThreadAllocatedBytes(threadId) -
+                before - overhead;
+            if (engine.getMap() != map) {
+                // a new map was loaded
+                continue;
+            }
+            measured++;
+            if (bytes > 0) {
+                allocatingTicks++;
+                maxBytes = Math.max(maxBytes, bytes);
+            }
+        }
+
+        BufferedImage image = new BufferedImage(800, 600,
+            BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        for (int i = 0; i < DRAW_FRAMES; i++) {
+            engine.draw(g);
+        }
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < DRAW_FRAMES; i++) {
+            engine.draw(g);
+        }
+        long drawBytes = threads.getThreadAllocatedBytes(threadId) -
+            before - overhead;
+        g.dispose();
+
+        System.out.println("Ticks measured:    " + measured);
+        System.out.println("Allocating ticks:  " + allocatingTicks +
+            " (max " + maxBytes + " bytes)");
+        System.out.println("Draw:              " +
+            (drawBytes / DRAW_FRAMES) + " bytes/frame");
+        boolean interpreted = System.getProperty("java.vm.info", "")
+            .startsWith("interpreted mode");
+        int tolerated = interpreted ? 0 : measured / NOISE_TICKS;
+        if (allocatingTicks > tolerated) {
+            System.out.println("FAILED: the game loop allocates");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Gets the bytes that reading the allocation counter allocates
+     * by itself, so it can be subtracted.
+     */
+    private static long getOverhead(
+        com.sun.management.ThreadMXBean threads, long threadId)
+    {
+        long overhead = Long.MAX_VALUE;
+        for (int i = 0; i < 1000; i++) {
+            long before = threads.getThreadAllocatedBytes(threadId);
+            long after = threads.getThreadAllocatedBytes(threadId);
+            overhead = Math.min(overhead, after - before);
+        }
+        return overhead;
+    }
+
+}
@@ -0,0 +1,109 @@
+package com.TETOSOFT.benchmarks;
+
+import java.io.*;
+import java.util.Random;
+
+import com.TETOSOFT.tilegame.GameEngine;
+import com.TETOSOFT.tilegame.MapLoader;
+import com.TETOSOFT.tilegame.TileMap;
+
+/**
+ * Generates text maps of any size for the benchmarks, in the same
+ * format as the maps in the maps/ directory: a ground row, floating
+ * platforms every few screens, and coins and grubs scattered over
+ * the empty cells.
+ */
+public class BenchmarkMaps {
+
+    /** Height of every generated map, in tiles. */
+    public static final int MAP_HEIGHT = 14;
+
+    /** Seed used for sprite placement, so every run gets the same map. */
+    public static final long SEED = 42;
+
+    /**
+     * Writes a map with the specified width (in tiles) and number of
+     * sprites to a temporary file. If the map has fewer free cells than
+     * numSprites, every free cell gets a sprite.
+     *
+     * @param width      The width of the map in tiles
+     * @param numSprites The number of coins and grubs to place
+     * @return The map file, deleted when the VM exits
+     */
+    public static File writeMap(int width, int numSprites)
+        throws IOException
+    {
+        char[][] cells = new char[MAP_HEIGHT][width];
+        for (int y = 0; y < MAP_HEIGHT; y++) {
+            for (int x = 0; x < width; x++) {
+                cells[y][x] = ' ';
+            }
+        }
+
+        // ground and platforms
+        for (int x = 0; x < width; x++) {
+            cells[MAP_HEIGHT - 1][x] = 'B';
+            if (x % 16 >= 8 && x % 16 < 14) {
+                cells[MAP_HEIGHT - 5][x] = 'I';
+            }
+        }
+
+        // the player starts at tile 3, so keep the first columns clear
+        int free = 0;
+        for (int y = 1; y < MAP_HEIGHT - 1; y++) {
+            for (int x = 6; x < width; x++) {
+                if (cells[y][x] == ' ') {
+                    free++;
+                }
+            }
+        }
+        numSprites = Math.min(numSprites, free);
+
+        Random random = new Random(SEED);
+        int placed = 0;
+        while (placed < numSprites) {
+            int x = 6 + random.nextInt(width - 6);
+            int y = 1 + random.nextInt(MAP_HEIGHT - 2);
+            if (cells[y][x] == ' ') {
+                cells[y][x] = (placed % 4 == 0) ? '1' : 'o';
+                placed++;
+            }
+        }
+
+        File file = File.createTempFile("benchmark-map", ".txt");
+        file.deleteOnExit();
+        Writer writer = new BufferedWriter(new FileWriter(file));
+        try {
+            writer.write("# generated map " + width + "x" + MAP_HEIGHT +
+                ", " + numSprites + " sprites\n");
+            for (int y = 0; y < MAP_HEIGHT; y++) {
+                writer.write(cells[y]);
+                writer.write('\n');
+            }
+        }
+        finally {
+            writer.close();
+        }
+        return file;
+    }
+
+    /**
+     * Creates a headless GameEngine playing a generated map.
+     *
+     * @param loader     The MapLoader used to load the generated map
+     * @param width      The width of the map in tiles
+     * @param numSprites The number of coins and grubs to place
+     * @return The GameEngine, with the generated map as its current map
+     */
+    public static GameEngine newEngine(MapLoader loader, int width,
+        int numSprites) throws IOException
+    {
+        GameEngine engine = new GameEngine();
+        engine.initHeadless();
+        TileMap map = loader.loadMap(
+            writeMap(width, numSprites).getPath());
+        engine.setMap(map);
+        return engine;
+    }
+
+}
@@ -0,0 +1,71 @@
+package com.TETOSOFT.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.TETOSOFT.graphics.Sprite;
+import com.TETOSOFT.tilegame.MapLoader;
+import com.TETOSOFT.tilegame.TileMap;
+
+/**
+ * Measures removing every sprite from a generated map, one per tick in
+ * random order, the way coins go when they are collected. The time per
+ * removal should not depend on how many sprites the map holds.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class CollectBenchmark {
+
+    @Param({"1000", "10000"})
+    public int spriteCount;
+
+    private MapLoader loader;
+    private String filename;
+    private TileMap map;
+    private Sprite[] order;
+    private int next;
+
+    @Setup
+    public void setUp() throws Exception {
+        loader = new MapLoader(null);
+        filename = BenchmarkMaps.writeMap(spriteCount, spriteCount).getPath();
+        loadMap();
+    }
+
+    private void loadMap() throws Exception {
+        map = loader.loadMap(filename);
+        ArrayList sprites = new ArrayList();
+        Iterator i = map.getSprites();
+        while (i.hasNext()) {
+            sprites.add(i.next());
+        }
+        order = (Sprite[]) sprites.toArray(new Sprite[sprites.size()]);
+        Random random = new Random(BenchmarkMaps.SEED);
+        for (int j = order.length - 1; j > 0; j--) {
+            int k = random.nextInt(j + 1);
+            Sprite swap = order[j];
+            order[j] = order[k];
+            order[k] = swap;
+        }
+        next = 0;
+    }
+
+    @Benchmark
+    public TileMap collect() throws Exception {
+        if (next == order.length) {
+            loadMap();
+        }
+        map.removeSprite(order[next++]);
+        map.applyRemovals();
+        return map;
+    }
+
+}
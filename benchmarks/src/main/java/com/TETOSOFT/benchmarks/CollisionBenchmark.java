@@ -0,0 +1,86 @@
+package com.TETOSOFT.benchmarks;
+
+import java.awt.Point;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.TETOSOFT.graphics.Sprite;
+import com.TETOSOFT.tilegame.GameEngine;
+import com.TETOSOFT.tilegame.MapLoader;
+import com.TETOSOFT.tilegame.TileMap;
+import com.TETOSOFT.tilegame.TileMapDrawer;
+
+/**
+ * Measures GameEngine.getTileCollision and GameEngine.getSpriteCollision
+ * for the player at positions spread over a generated map.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class CollisionBenchmark {
+
+    private static final int NUM_PROBES = 1024;
+
+    @Param({"1000", "10000"})
+    public int mapWidth;
+
+    @Param({"100", "1000", "10000"})
+    public int spriteCount;
+
+    private GameEngine engine;
+    private Sprite player;
+    private float[] probeX;
+    private float[] probeY;
+    private float[] probeNewX;
+    private int probe;
+
+    @Setup
+    public void setUp() throws Exception {
+        MapLoader loader = new MapLoader(null);
+        engine = BenchmarkMaps.newEngine(loader, mapWidth, spriteCount);
+        TileMap map = engine.getMap();
+        player = map.getPlayer();
+
+        // positions above the ground, with sweeps from a few pixels
+        // up to several tiles, as after a long frame
+        Random random = new Random(BenchmarkMaps.SEED);
+        int maxX = TileMapDrawer.tilesToPixels(map.getWidth()) -
+            TileMapDrawer.tilesToPixels(8);
+        int maxY = TileMapDrawer.tilesToPixels(map.getHeight() - 2);
+        probeX = new float[NUM_PROBES];
+        probeY = new float[NUM_PROBES];
+        probeNewX = new float[NUM_PROBES];
+        for (int i = 0; i < NUM_PROBES; i++) {
+            probeX[i] = random.nextInt(maxX);
+            probeY[i] = random.nextInt(maxY);
+            probeNewX[i] = probeX[i] + random.nextInt(
+                TileMapDrawer.tilesToPixels(4));
+        }
+    }
+
+    private int nextProbe() {
+        int i = probe;
+        probe = (probe + 1) & (NUM_PROBES - 1);
+        player.setX(probeX[i]);
+        player.setY(probeY[i]);
+        return i;
+    }
+
+    @Benchmark
+    public Point tileCollision() {
+        int i = nextProbe();
+        return engine.getTileCollision(player, probeNewX[i], probeY[i]);
+    }
+
+    @Benchmark
+    public Sprite spriteCollision() {
+        nextProbe();
+        return engine.getSpriteCollision(player);
+    }
+
+}
@@ -0,0 +1,72 @@
+package com.TETOSOFT.benchmarks;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.TETOSOFT.tilegame.GameEngine;
+import com.TETOSOFT.tilegame.MapLoader;
+import com.TETOSOFT.tilegame.TileMap;
+import com.TETOSOFT.tilegame.TileMapDrawer;
+
+/**
+ * Measures TileMapDrawer.draw into an offscreen 800x600 BufferedImage,
+ * with the player in the middle of a generated map.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class DrawBenchmark {
+
+    private static final int SCREEN_WIDTH = 800;
+    private static final int SCREEN_HEIGHT = 600;
+
+    @Param({"1000", "10000"})
+    public int mapWidth;
+
+    @Param({"100", "1000", "10000"})
+    public int spriteCount;
+
+    @Param({"true", "false"})
+    public boolean tileCaching;
+
+    private TileMap map;
+    private TileMapDrawer drawer;
+    private BufferedImage image;
+    private Graphics2D g;
+
+    @Setup
+    public void setUp() throws Exception {
+        MapLoader loader = new MapLoader(null);
+        GameEngine engine =
+            BenchmarkMaps.newEngine(loader, mapWidth, spriteCount);
+        map = engine.getMap();
+        map.getPlayer().setX(
+            TileMapDrawer.tilesToPixels(map.getWidth() / 2));
+
+        drawer = new TileMapDrawer();
+        drawer.setTileCaching(tileCaching);
+        drawer.setBackground(loader.loadImage("background.jpg"));
+
+        image = new BufferedImage(SCREEN_WIDTH, SCREEN_HEIGHT,
+            BufferedImage.TYPE_INT_RGB);
+        g = image.createGraphics();
+    }
+
+    @TearDown
+    public void tearDown() {
+        g.dispose();
+    }
+
+    @Benchmark
+    public BufferedImage draw() {
+        drawer.draw(g, map, SCREEN_WIDTH, SCREEN_HEIGHT);
+        return image;
+    }
+
+}
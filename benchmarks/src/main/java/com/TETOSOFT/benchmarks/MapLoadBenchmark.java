@@ -0,0 +1,59 @@
+package com.TETOSOFT.benchmarks;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.TETOSOFT.tilegame.MapCompiler;
+import com.TETOSOFT.tilegame.MapLoader;
+import com.TETOSOFT.tilegame.TileMap;
+
+/**
+ * Measures MapLoader.loadMap for generated maps, which is what the game
+ * does on every level change, from both the text format and the compiled
+ * binary format. reloadCachedMap measures a reload after a death, served
+ * from the MapLoader template cache.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class MapLoadBenchmark {
+
+    @Param({"1000", "10000"})
+    public int mapWidth;
+
+    @Param({"100", "1000", "10000"})
+    public int spriteCount;
+
+    @Param({"txt", "map"})
+    public String format;
+
+    private MapLoader loader;
+    private String filename;
+
+    @Setup
+    public void setUp() throws Exception {
+        loader = new MapLoader(null);
+        filename = BenchmarkMaps.writeMap(mapWidth, spriteCount).getPath();
+        if (format.equals("map")) {
+            filename = MapCompiler.compile(filename);
+            new File(filename).deleteOnExit();
+        }
+    }
+
+    @Benchmark
+    public TileMap loadMap() throws Exception {
+        loader.clearMapCache();
+        return loader.loadMap(filename);
+    }
+
+    @Benchmark
+    public TileMap reloadCachedMap() throws Exception {
+        return loader.loadMap(filename);
+    }
+
+}
@@ -0,0 +1,79 @@
+package com.TETOSOFT.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.TETOSOFT.tilegame.CreaturePhysics;
+import com.TETOSOFT.tilegame.GameEngine;
+import com.TETOSOFT.tilegame.MapLoader;
+import com.TETOSOFT.tilegame.TileMap;
+import com.TETOSOFT.tilegame.sprites.Creature;
+
+/**
+ * Measures moving every creature of a generated map one tick with
+ * CreaturePhysics: copying them into the batch, gravity, movement,
+ * tile collisions, and copying the results back. The creatures are
+ * woken up first, so they walk and turn at walls. For the game to keep
+ * 60 Hz this has to stay well under the 16 ms of a frame. With
+ * parallel set, the batch is moved in bands on the common ForkJoinPool.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class PhysicsBenchmark {
+
+    private static final int MAP_WIDTH = 10000;
+
+    // one generated sprite in four is a grub
+    private static final int SPRITES_PER_CREATURE = 4;
+
+    @Param({"1000", "10000"})
+    public int creatureCount;
+
+    @Param({"false", "true"})
+    public boolean parallel;
+
+    private TileMap map;
+    private Creature[] creatures;
+    private CreaturePhysics physics;
+    private long tickTime;
+
+    @Setup
+    public void setUp() throws Exception {
+        map = new MapLoader(null).loadMap(BenchmarkMaps.writeMap(MAP_WIDTH,
+            creatureCount * SPRITES_PER_CREATURE).getPath());
+        ArrayList list = new ArrayList();
+        Iterator i = map.getSprites();
+        while (i.hasNext()) {
+            Object sprite = i.next();
+            if (sprite instanceof Creature) {
+                ((Creature) sprite).wakeUp();
+                list.add(sprite);
+            }
+        }
+        creatures = (Creature[]) list.toArray(new Creature[list.size()]);
+        physics = new CreaturePhysics();
+        if (parallel) {
+            physics.setPool(ForkJoinPool.commonPool());
+        }
+        tickTime = new GameEngine().getTickTime();
+    }
+
+    @Benchmark
+    public CreaturePhysics update() {
+        physics.clear();
+        for (int i = 0; i < creatures.length; i++) {
+            physics.add(creatures[i]);
+        }
+        physics.update(map, tickTime);
+        return physics;
+    }
+
+}
@@ -0,0 +1,70 @@
+package com.TETOSOFT.benchmarks;
+
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.TETOSOFT.graphics.Animation;
+import com.TETOSOFT.graphics.Sprite;
+import com.TETOSOFT.tilegame.MapLoader;
+import com.TETOSOFT.tilegame.TileMap;
+import com.TETOSOFT.tilegame.sprites.Creature;
+import com.TETOSOFT.tilegame.sprites.PowerUp;
+
+/**
+ * Measures Animation.update and the cloning of creatures and power ups
+ * that MapLoader does for every sprite in a map.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class SpriteBenchmark {
+
+    private Animation animation;
+    private Creature creature;
+    private PowerUp powerUp;
+
+    @Setup
+    public void setUp() throws Exception {
+        MapLoader loader = new MapLoader(null);
+        TileMap map = loader.loadMap(
+            BenchmarkMaps.writeMap(100, 100).getPath());
+
+        Iterator i = map.getSprites();
+        while (i.hasNext()) {
+            Sprite sprite = (Sprite)i.next();
+            if (creature == null && sprite instanceof Creature) {
+                creature = (Creature)sprite;
+            }
+            else if (powerUp == null && sprite instanceof PowerUp) {
+                powerUp = (PowerUp)sprite;
+            }
+        }
+
+        animation = new Animation();
+        for (int f = 0; f < 4; f++) {
+            animation.addFrame(loader.loadImage("fly1.png"), 50);
+        }
+    }
+
+    @Benchmark
+    public Animation animationUpdate() {
+        animation.update(17);
+        return animation;
+    }
+
+    @Benchmark
+    public Object creatureClone() {
+        return creature.clone();
+    }
+
+    @Benchmark
+    public Object powerUpClone() {
+        return powerUp.clone();
+    }
+
+}
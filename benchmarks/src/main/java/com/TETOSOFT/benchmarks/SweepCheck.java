@@ -0,0 +1,346 @@
+package com.TETOSOFT.benchmarks;
+
+import java.awt.Image;
+import java.awt.Point;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import com.TETOSOFT.tilegame.TileMap;
+import com.TETOSOFT.tilegame.TileMapDrawer;
+import com.TETOSOFT.tilegame.TileSweep;
+
+/**
+ * Checks TileSweep against brute-force references on random maps.
+ *
+ * <p>Half the sweeps move a random box along x or y. Their tile, normal
+ * and time of impact must be exactly those found by stepping the
+ * leading edge one pixel at a time and checking every tile it enters.
+ *
+ * <p>The other half move a box that starts clear of solid tiles along
+ * both x and y. They are checked against the box placed at small steps
+ * along the move, to within {@value #TOLERANCE} pixels. If the box
+ * shrunk by 1 pixel on each side overlaps a solid tile anywhere along
+ * the move, the sweep must hit, and no later than that. If it hits,
+ * the box grown by {@value #TOLERANCE} pixels on each side must
+ * already overlap a solid tile at the time of impact, and the tile
+ * found must be one of them.
+ *
+ * <p>Exits with status 1 if any sweep disagrees.
+ *
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar com.TETOSOFT.benchmarks.SweepCheck [sweeps] [seed]
+ * </pre>
+ */
+public class SweepCheck {
+
+    private static final int DEFAULT_SWEEPS = 1000000;
+    private static final int SWEEPS_PER_MAP = 20000;
+    private static final int MAP_WIDTH = 150;
+    private static final int MAP_HEIGHT = 14;
+    private static final int MAX_MOVE = 1000;
+    private static final int MISMATCHES_SHOWN = 10;
+
+    /** How far off a diagonal sweep may be, in pixels */
+    private static final int TOLERANCE = 2;
+
+    /** Steps per pixel of the diagonal reference */
+    private static final int STEPS_PER_PIXEL = 8;
+
+    /** How much a float time of impact may differ from the reference */
+    private static final float TIME_EPSILON = 1e-4f;
+
+    public static void main(String[] args) {
+        int numSweeps = DEFAULT_SWEEPS;
+        if (args.length > 0) {
+            numSweeps = Integer.parseInt(args[0]);
+        }
+        long seed = 1;
+        if (args.length > 1) {
+            seed = Long.parseLong(args[1]);
+        }
+
+        Random random = new Random(seed);
+        TileSweep sweep = new TileSweep();
+        TileMap map = null;
+        int hits = 0;
+        int diagonalHits = 0;
+        int mismatches = 0;
+        for (int i = 0; i < numSweeps; i++) {
+            if (i % SWEEPS_PER_MAP == 0) {
+                map = createMap(random);
+            }
+
+            int width = 20 + random.nextInt(60);
+            int height = 20 + random.nextInt(60);
+            float x;
+            float y;
+            boolean diagonal = (i % 2 == 1);
+            do {
+                x = random.nextFloat() *
+                    (TileMapDrawer.tilesToPixels(MAP_WIDTH) + 200) - 100;
+                y = random.nextFloat() *
+                    (TileMapDrawer.tilesToPixels(MAP_HEIGHT) + 200) - 100;
+            } while (diagonal && overlaps(map, x, y, width, height, 0, null));
+
+            float newX = x;
+            float newY = y;
+            if (diagonal) {
+                newX += (random.nextFloat() * 2 - 1) * MAX_MOVE;
+                newY += (random.nextFloat() * 2 - 1) * MAX_MOVE;
+            } else if (random.nextBoolean()) {
+                newX += (random.nextFloat() * 2 - 1) * MAX_MOVE;
+            } else {
+                newY += (random.nextFloat() * 2 - 1) * MAX_MOVE;
+            }
+
+            boolean hit = sweep.sweep(map, x, y, newX, newY, width, height);
+            String problem;
+            if (diagonal) {
+                problem = checkDiagonal(map, sweep, hit, x, y, newX, newY,
+                    width, height);
+            } else {
+                problem = checkAxis(map, sweep, hit, x, y, newX, newY,
+                    width, height);
+            }
+            if (hit) {
+                hits++;
+                if (diagonal) {
+                    diagonalHits++;
+                }
+            }
+            if (problem != null) {
+                if (mismatches < MISMATCHES_SHOWN) {
+                    System.out.println("Mismatch: " + width + "x" + height +
+                        " box from (" + x + ", " + y + ") to (" + newX +
+                        ", " + newY + "): " + problem);
+                }
+                mismatches++;
+            }
+        }
+
+        System.out.println("Sweeps:      " + numSweeps + " (" + hits +
+            " hits, " + diagonalHits + " of them diagonal)");
+        System.out.println("Mismatches:  " + mismatches);
+        if (mismatches > 0) {
+            System.out.println("FAILED: TileSweep disagrees with the " +
+                "reference");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Creates a map with a sixth of its tiles solid, at random.
+     */
+    private static TileMap createMap(Random random) {
+        Image[] tileImages = {
+            null, new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB)
+        };
+        TileMap map = new TileMap(MAP_WIDTH, MAP_HEIGHT, tileImages);
+        for (int i = 0; i < MAP_WIDTH * MAP_HEIGHT / 6; i++) {
+            map.setTileId(random.nextInt(MAP_WIDTH),
+                random.nextInt(MAP_HEIGHT), 1);
+        }
+        return map;
+    }
+
+    /**
+     * Checks a sweep along x or y exactly. Returns what is wrong, or null.
+     */
+    private static String checkAxis(TileMap map, TileSweep sweep,
+        boolean hit, float x, float y, float newX, float newY,
+        int width, int height)
+    {
+        int[] expected = findHit(map, x, y, newX, newY, width, height);
+        if (hit != (expected != null)) {
+            return hit ? "got " + format(sweep.getTile()) + ", expected " +
+                "no hit" : "got no hit, expected " + expected[0] + "," +
+                expected[1];
+        }
+        if (!hit) {
+            return (sweep.getTimeOfImpact() == 1) ? null :
+                "time of impact " + sweep.getTimeOfImpact() + " without a hit";
+        }
+        if (sweep.getTile().x != expected[0] ||
+            sweep.getTile().y != expected[1] ||
+            sweep.getNormalX() != expected[2] ||
+            sweep.getNormalY() != expected[3])
+        {
+            return "got " + format(sweep.getTile()) + ", expected " +
+                expected[0] + "," + expected[1];
+        }
+        float time = getTimeOfImpact(expected[4], expected[5], expected[6],
+            (expected[2] != 0) ? -expected[2] : -expected[3]);
+        if (Math.abs(sweep.getTimeOfImpact() - time) > TIME_EPSILON) {
+            return "time of impact " + sweep.getTimeOfImpact() +
+                ", expected " + time;
+        }
+        return null;
+    }
+
+    /**
+     * Finds the tile a box moving along x or y hits by stepping its
+     * leading edge one pixel at a time. Returns the tile, the normal and
+     * the leading edge's first, last and hitting pixel as {x, y, normalX,
+     * normalY, lead, lastLead, hitLead}, or null if nothing is hit.
+     */
+    private static int[] findHit(TileMap map, float x, float y,
+        float newX, float newY, int width, int height)
+    {
+        if (newX != x) {
+            int step = (newX > x) ? 1 : -1;
+            int firstLead = Math.round(step > 0 ? x + width - 1 : x);
+            int lastLead = Math.round(step > 0 ? newX + width - 1 : newX);
+            int top = TileMapDrawer.pixelsToTiles(y);
+            int bottom = TileMapDrawer.pixelsToTiles(y + height - 1);
+            for (int lead = firstLead;; lead += step) {
+                int col = TileMapDrawer.pixelsToTiles(lead);
+                for (int row = top; row <= bottom; row++) {
+                    if (isSolid(map, col, row)) {
+                        return new int[] {col, row, -step, 0,
+                            firstLead, lastLead, lead};
+                    }
+                }
+                if (lead == lastLead) {
+                    return null;
+                }
+            }
+        }
+
+        int step = (newY > y) ? 1 : -1;
+        int firstLead = Math.round(step > 0 ? y + height - 1 : y);
+        int lastLead = Math.round(step > 0 ? newY + height - 1 : newY);
+        int left = TileMapDrawer.pixelsToTiles(x);
+        int right = TileMapDrawer.pixelsToTiles(x + width - 1);
+        for (int lead = firstLead;; lead += step) {
+            int row = TileMapDrawer.pixelsToTiles(lead);
+            for (int col = left; col <= right; col++) {
+                if (isSolid(map, col, row)) {
+                    return new int[] {col, row, 0, -step,
+                        firstLead, lastLead, lead};
+                }
+            }
+            if (lead == lastLead) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Gets the time of impact of a leading edge moving from firstLead to
+     * lastLead that hits a tile at hitLead: the time it touches the tile,
+     * that is when its position rounds to the pixel before hitLead, or 0
+     * if it starts in the tile.
+     */
+    private static float getTimeOfImpact(int firstLead, int lastLead,
+        int hitLead, int step)
+    {
+        if (hitLead == firstLead) {
+            return 0;
+        }
+        float touch = hitLead - 1.5f * step;
+        return Math.max((touch - firstLead) / (lastLead - firstLead), 0);
+    }
+
+    /**
+     * Checks a sweep along both x and y against the box placed at small
+     * steps along the move. Returns what is wrong, or null.
+     */
+    private static String checkDiagonal(TileMap map, TileSweep sweep,
+        boolean hit, float x, float y, float newX, float newY,
+        int width, int height)
+    {
+        float dx = newX - x;
+        float dy = newY - y;
+        int steps = (int) Math.ceil(Math.max(Math.abs(dx), Math.abs(dy)) *
+            STEPS_PER_PIXEL);
+        float outerTime = findOverlap(map, x, y, dx, dy, width, height,
+            TOLERANCE, steps);
+        float innerTime = findOverlap(map, x, y, dx, dy, width, height,
+            -1, steps);
+        if (!hit) {
+            return (innerTime > 1) ? null :
+                "got no hit, expected one at " + innerTime;
+        }
+
+        float time = sweep.getTimeOfImpact();
+        if (time < outerTime - TIME_EPSILON) {
+            return "time of impact " + time + " before the box is near " +
+                "a tile at " + outerTime;
+        }
+        if (time > innerTime + TIME_EPSILON) {
+            return "time of impact " + time + " after the box is in a " +
+                "tile at " + innerTime;
+        }
+        Point tile = sweep.getTile();
+        if (!isSolid(map, tile.x, tile.y) ||
+            !overlaps(map, x + dx * time, y + dy * time, width, height,
+            TOLERANCE, tile))
+        {
+            return "tile " + format(tile) + " isn't solid or isn't next " +
+                "to the box at " + time;
+        }
+        return null;
+    }
+
+    /**
+     * Finds the first of the specified number of steps along a move at
+     * which the box, grown by the specified number of pixels on each
+     * side, overlaps a solid tile. Returns the time of the step, or 2 if
+     * there is none.
+     */
+    private static float findOverlap(TileMap map, float x, float y,
+        float dx, float dy, int width, int height, int grow, int steps)
+    {
+        for (int i = 0; i <= steps; i++) {
+            float time = (float) i / steps;
+            if (overlaps(map, x + dx * time, y + dy * time, width, height,
+                grow, null))
+            {
+                return time;
+            }
+        }
+        return 2;
+    }
+
+    /**
+     * Checks if a box at (x, y), grown by the specified number of pixels
+     * on each side, overlaps a solid tile, or the specified tile if it
+     * isn't null.
+     */
+    private static boolean overlaps(TileMap map, float x, float y,
+        int width, int height, int grow, Point tile)
+    {
+        int left = TileMapDrawer.pixelsToTiles(Math.round(x) - grow);
+        int right = TileMapDrawer.pixelsToTiles(
+            Math.round(x + width - 1) + grow);
+        int top = TileMapDrawer.pixelsToTiles(Math.round(y) - grow);
+        int bottom = TileMapDrawer.pixelsToTiles(
+            Math.round(y + height - 1) + grow);
+        for (int col = left; col <= right; col++) {
+            for (int row = top; row <= bottom; row++) {
+                if (tile == null ? isSolid(map, col, row) :
+                    (col == tile.x && row == tile.y))
+                {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks a tile the way collisions see it: columns left and right
+     * of the map are solid.
+     */
+    private static boolean isSolid(TileMap map, int col, int row) {
+        if (col < 0 || col >= map.getWidth()) {
+            return true;
+        }
+        return map.isSolid(col, row);
+    }
+
+    private static String format(Point tile) {
+        return tile.x + "," + tile.y;
+    }
+
+}
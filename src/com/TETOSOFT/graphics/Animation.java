@@ -11,7 +11,7 @@ import java.util.ArrayList;
  */
 public class Animation {
     /** List to store animation frames */
-    private ArrayList frames;
+    private ArrayList<AnimFrame> frames;
 
     /** Index of the current frame being displayed */
     private int currFrameIndex;
@@ -26,7 +26,7 @@ public class Animation {
      * Default constructor that creates an empty animation.
      */
     public Animation() {
-        this(new ArrayList(), 0);
+        this(new ArrayList<AnimFrame>(), 0);
     }
 
     /**
@@ -35,7 +35,7 @@ public class Animation {
      * @param frames        List of animation frames
      * @param totalDuration Total duration of the animation in milliseconds
      */
-    private Animation(ArrayList frames, long totalDuration) {
+    private Animation(ArrayList<AnimFrame> frames, long totalDuration) {
         this.frames = frames;
         this.totalDuration = totalDuration;
         start();
@@ -61,6 +61,19 @@ public class Animation {
         frames.add(new AnimFrame(image, totalDuration));
     }
 
+    /**
+     * Adds a new frame to the animation, drawn from a texture atlas.
+     *
+     * @param region   The atlas region for the new frame
+     * @param duration How long this frame should be displayed (in milliseconds)
+     */
+    public synchronized void addFrame(AtlasRegion region, long duration) {
+        totalDuration += duration;
+        AnimFrame frame = new AnimFrame(null, totalDuration);
+        frame.region = region;
+        frames.add(frame);
+    }
+
     /**
      * Resets the animation to the beginning.
      */
@@ -100,9 +113,51 @@ public class Animation {
     public synchronized Image getImage() {
         if (frames.size() == 0) {
             return null;
-        } else {
-            return getFrame(currFrameIndex).image;
         }
+        AnimFrame frame = getFrame(currFrameIndex);
+        if (frame.region != null) {
+            return frame.region.getImage();
+        }
+        return frame.image;
+    }
+
+    /**
+     * Gets the current frame's atlas region.
+     *
+     * @return The atlas region of the current animation frame, or null if
+     *         the frame is a plain image or no frames exist
+     */
+    public synchronized AtlasRegion getRegion() {
+        if (frames.size() == 0) {
+            return null;
+        }
+        return getFrame(currFrameIndex).region;
+    }
+
+    /**
+     * Gets the width of the current frame.
+     *
+     * @return The width in pixels
+     */
+    public synchronized int getWidth() {
+        AnimFrame frame = getFrame(currFrameIndex);
+        if (frame.region != null) {
+            return frame.region.getWidth();
+        }
+        return frame.image.getWidth(null);
+    }
+
+    /**
+     * Gets the height of the current frame.
+     *
+     * @return The height in pixels
+     */
+    public synchronized int getHeight() {
+        AnimFrame frame = getFrame(currFrameIndex);
+        if (frame.region != null) {
+            return frame.region.getHeight();
+        }
+        return frame.image.getHeight(null);
     }
 
     /**
@@ -112,17 +167,21 @@ public class Animation {
      * @return The AnimFrame at the specified index
      */
     private AnimFrame getFrame(int i) {
-        return (AnimFrame) frames.get(i);
+        return frames.get(i);
     }
 
     /**
      * Inner class that represents a single frame in the animation.
-     * Each frame has an image and the time at which it ends.
+     * Each frame has an image or an atlas region, and the time at which
+     * it ends.
      */
     private class AnimFrame {
         /** The image for this frame */
         Image image;
 
+        /** The atlas region for this frame, used instead of the image */
+        AtlasRegion region;
+
         /**
          * The time (in milliseconds) at which this frame ends in the animation sequence
          */
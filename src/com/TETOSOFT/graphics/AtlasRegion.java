@@ -0,0 +1,125 @@
+package com.TETOSOFT.graphics;
+
+import java.awt.Graphics;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+
+/**
+ * The AtlasRegion class is a handle to a rectangle of a texture atlas
+ * page. Drawing a region copies that rectangle from the page, so many
+ * tiles and animation frames can be drawn from one source surface.
+ *
+ * <p>A region is created by {@link TextureAtlas#add(Image)} and gets
+ * its page and location when the atlas is packed.
+ */
+public class AtlasRegion {
+    /** The atlas page holding this region */
+    private Image page;
+
+    /** The location and size of the region in the page */
+    private int x;
+    private int y;
+    private int width;
+    private int height;
+
+    /** A sub-image view of the region, created on demand */
+    private Image image;
+
+    /**
+     * Creates a region of the specified size. The page and location
+     * are set when the atlas is packed.
+     *
+     * @param width  The width of the region in pixels
+     * @param height The height of the region in pixels
+     */
+    AtlasRegion(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Places this region in an atlas page.
+     *
+     * @param page The atlas page
+     * @param x    The left edge of the region in the page
+     * @param y    The top edge of the region in the page
+     */
+    void setLocation(Image page, int x, int y) {
+        this.page = page;
+        this.x = x;
+        this.y = y;
+        image = null;
+    }
+
+    /**
+     * Draws this region with its top-left corner at the specified
+     * location.
+     *
+     * @param g The graphics context to draw to
+     * @param x The x location to draw at
+     * @param y The y location to draw at
+     */
+    public void draw(Graphics g, int x, int y) {
+        g.drawImage(page, x, y, x + width, y + height,
+            this.x, this.y, this.x + width, this.y + height, null);
+    }
+
+    /**
+     * Gets the atlas page holding this region.
+     *
+     * @return The atlas page, or null if the atlas isn't packed yet
+     */
+    public Image getPage() {
+        return page;
+    }
+
+    /**
+     * Gets the left edge of this region in its page.
+     *
+     * @return The x location in pixels
+     */
+    public int getX() {
+        return x;
+    }
+
+    /**
+     * Gets the top edge of this region in its page.
+     *
+     * @return The y location in pixels
+     */
+    public int getY() {
+        return y;
+    }
+
+    /**
+     * Gets the width of this region.
+     *
+     * @return The width in pixels
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Gets the height of this region.
+     *
+     * @return The height in pixels
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Gets this region as an Image, for code that needs one. The
+     * image shares the pixels of the atlas page, but drawing it is
+     * slower than calling draw().
+     *
+     * @return An image of this region
+     */
+    public synchronized Image getImage() {
+        if (image == null && page != null) {
+            image = ((BufferedImage)page).getSubimage(x, y, width, height);
+        }
+        return image;
+    }
+}
@@ -17,6 +17,9 @@ public class ScreenManager {
     /** The graphics device (typically the monitor) being managed */
     private GraphicsDevice device;
 
+    /** The System.nanoTime() at which a frame was last shown */
+    private long lastShowTime;
+
     /**
      * Constructor initializes the ScreenManager with the default graphics device.
      */
@@ -150,20 +153,45 @@ public class ScreenManager {
     /**
      * Updates the display by showing the contents of the back buffer.
      * This method should be called after drawing operations are complete.
+     * It is the same as calling show() then sync().
      */
     public void update() {
+        show();
+        sync();
+    }
+
+    /**
+     * Shows the contents of the back buffer, unless they were lost.
+     */
+    public void show() {
         Window window = device.getFullScreenWindow();
         if (window != null) {
             BufferStrategy strategy = window.getBufferStrategy();
             if (!strategy.contentsLost()) {
                 strategy.show();
+                lastShowTime = System.nanoTime();
             }
         }
+    }
 
-        // Synchronize with the display refresh rate
+    /**
+     * Synchronizes with the display refresh rate, flushing any drawing
+     * the window system has buffered.
+     */
+    public void sync() {
         Toolkit.getDefaultToolkit().sync();
     }
 
+    /**
+     * Gets the time the back buffer was last shown by show().
+     *
+     * @return The System.nanoTime() just after the last show, or 0 if no
+     *         frame has been shown
+     */
+    public long getLastShowTime() {
+        return lastShowTime;
+    }
+
     /**
      * Gets the full-screen window.
      *
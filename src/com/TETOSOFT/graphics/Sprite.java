@@ -1,5 +1,6 @@
 package com.TETOSOFT.graphics;
 
+import java.awt.Graphics;
 import java.awt.Image;
 
 /**
@@ -9,6 +10,9 @@ import java.awt.Image;
  */
 public class Sprite {
 
+    /** The handle of a sprite that isn't in an entity store */
+    public static final int NO_HANDLE = -1;
+
     /** The animation sequence for this sprite */
     protected Animation anim;
 
@@ -24,6 +28,15 @@ public class Sprite {
     /** Vertical velocity (pixels per millisecond) */
     private float dy;
 
+    /** X-coordinate saved by the last call to savePosition() */
+    private float prevX;
+
+    /** Y-coordinate saved by the last call to savePosition() */
+    private float prevY;
+
+    /** The handle of this sprite in the entity store that holds it */
+    private int handle = NO_HANDLE;
+
     /**
      * Creates a new Sprite with the specified animation.
      *
@@ -83,13 +96,69 @@ public class Sprite {
         this.y = y;
     }
 
+    /**
+     * Saves the current position as the previous position. Called at the
+     * start of each fixed simulation tick so drawing can interpolate between
+     * the two most recent states.
+     */
+    public void savePosition() {
+        prevX = x;
+        prevY = y;
+    }
+
+    /**
+     * Gets the X-coordinate saved by the last call to savePosition().
+     *
+     * @return The previous X position
+     */
+    public float getPreviousX() {
+        return prevX;
+    }
+
+    /**
+     * Gets the Y-coordinate saved by the last call to savePosition().
+     *
+     * @return The previous Y position
+     */
+    public float getPreviousY() {
+        return prevY;
+    }
+
+    /**
+     * Gets the X-coordinate blended between the saved previous position and
+     * the current position.
+     *
+     * @param alpha Blend factor, from 0 (previous) to 1 (current)
+     * @return The interpolated X position
+     */
+    public float getInterpolatedX(float alpha) {
+        if (alpha >= 1) {
+            return x;
+        }
+        return prevX + (x - prevX) * alpha;
+    }
+
+    /**
+     * Gets the Y-coordinate blended between the saved previous position and
+     * the current position.
+     *
+     * @param alpha Blend factor, from 0 (previous) to 1 (current)
+     * @return The interpolated Y position
+     */
+    public float getInterpolatedY(float alpha) {
+        if (alpha >= 1) {
+            return y;
+        }
+        return prevY + (y - prevY) * alpha;
+    }
+
     /**
      * Gets the width of the sprite's current image.
      *
      * @return The width in pixels
      */
     public int getWidth() {
-        return anim.getImage().getWidth(null);
+        return anim.getWidth();
     }
 
     /**
@@ -98,7 +167,7 @@ public class Sprite {
      * @return The height in pixels
      */
     public int getHeight() {
-        return anim.getImage().getHeight(null);
+        return anim.getHeight();
     }
 
     /**
@@ -137,6 +206,25 @@ public class Sprite {
         this.dy = dy;
     }
 
+    /**
+     * Gets the handle of this sprite in the entity store that holds it.
+     *
+     * @return The handle, or NO_HANDLE if the sprite isn't in a store
+     */
+    public int getHandle() {
+        return handle;
+    }
+
+    /**
+     * Sets the handle of this sprite. Only the entity store that holds
+     * the sprite should call this.
+     *
+     * @param handle The new handle, or NO_HANDLE
+     */
+    public void setHandle(int handle) {
+        this.handle = handle;
+    }
+
     /**
      * Gets the current image of the sprite's animation.
      *
@@ -146,6 +234,23 @@ public class Sprite {
         return anim.getImage();
     }
 
+    /**
+     * Draws the current frame of the sprite's animation at the specified
+     * location, from its texture atlas region if it has one.
+     *
+     * @param g The graphics context to draw to
+     * @param x The x location to draw at
+     * @param y The y location to draw at
+     */
+    public void draw(Graphics g, int x, int y) {
+        AtlasRegion region = anim.getRegion();
+        if (region != null) {
+            region.draw(g, x, y);
+        } else {
+            g.drawImage(anim.getImage(), x, y, null);
+        }
+    }
+
     /**
      * Creates and returns a copy of this sprite.
      * Note: This creates a new Sprite instance with the same animation,
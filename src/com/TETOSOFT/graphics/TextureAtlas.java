@@ -0,0 +1,202 @@
+package com.TETOSOFT.graphics;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Image;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * The TextureAtlas class packs many small images into one or a few
+ * large page images. Each image added gets an {@link AtlasRegion}
+ * handle right away; once every image is added, pack() lays them out
+ * in rows (tallest first) and copies them into the pages. After that
+ * the original images aren't needed any more.
+ */
+public class TextureAtlas {
+    /** The default width and most height of a page, in pixels */
+    public static final int DEFAULT_PAGE_SIZE = 1024;
+
+    /** Space left between regions, in pixels */
+    private static final int PADDING = 1;
+
+    /** The configuration pages are made compatible with, or null */
+    private GraphicsConfiguration gc;
+
+    /** The width and most height of a page */
+    private int pageSize;
+
+    /** Images waiting to be packed, and their regions */
+    private ArrayList<Image> images;
+    private ArrayList<AtlasRegion> regions;
+
+    /** The packed pages */
+    private ArrayList<Image> pages;
+
+    /** The transparency the pages need to hold every image */
+    private int transparency = Transparency.OPAQUE;
+
+    /**
+     * Creates a new TextureAtlas with pages compatible with the
+     * specified GraphicsConfiguration. If the GraphicsConfiguration
+     * is null, the pages are plain BufferedImages.
+     *
+     * @param gc The graphics configuration, or null
+     */
+    public TextureAtlas(GraphicsConfiguration gc) {
+        this(gc, DEFAULT_PAGE_SIZE);
+    }
+
+    /**
+     * Creates a new TextureAtlas with the specified page size.
+     *
+     * @param gc       The graphics configuration, or null
+     * @param pageSize The width and most height of a page, in pixels
+     */
+    public TextureAtlas(GraphicsConfiguration gc, int pageSize) {
+        this.gc = gc;
+        this.pageSize = pageSize;
+        images = new ArrayList<Image>();
+        regions = new ArrayList<AtlasRegion>();
+        pages = new ArrayList<Image>();
+    }
+
+    /**
+     * Adds an image to the atlas. Adding the same image twice gives
+     * the same region.
+     *
+     * @param image The image to add
+     * @return The region the image will be packed into, or null if
+     *         the image is null
+     * @throws IllegalArgumentException if the image doesn't fit in a page
+     */
+    public synchronized AtlasRegion add(Image image) {
+        if (image == null) {
+            return null;
+        }
+        for (int i = 0; i < images.size(); i++) {
+            if (images.get(i) == image) {
+                return regions.get(i);
+            }
+        }
+
+        int width = image.getWidth(null);
+        int height = image.getHeight(null);
+        if (width > pageSize || height > pageSize) {
+            throw new IllegalArgumentException("Image is " + width + "x" +
+                height + ", bigger than the atlas page size " + pageSize);
+        }
+        AtlasRegion region = new AtlasRegion(width, height);
+        if (image instanceof Transparency) {
+            transparency = Math.max(transparency,
+                ((Transparency) image).getTransparency());
+        } else {
+            transparency = Transparency.TRANSLUCENT;
+        }
+        images.add(image);
+        regions.add(region);
+        return region;
+    }
+
+    /**
+     * Packs every image added since the last call into new pages.
+     */
+    public synchronized void pack() {
+        // place the tallest images first, so each row wastes less
+        Integer[] order = new Integer[images.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = Integer.valueOf(i);
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return getRegion(b.intValue()).getHeight() -
+                    getRegion(a.intValue()).getHeight();
+            }
+        });
+
+        int first = 0;
+        while (first < order.length) {
+            // lay out as many images as fit in one page
+            int x = 0;
+            int y = 0;
+            int rowHeight = 0;
+            int pageWidth = 0;
+            int last = first;
+            int[] locations = new int[order.length * 2];
+            while (last < order.length) {
+                AtlasRegion region = getRegion(order[last].intValue());
+                if (x + region.getWidth() > pageSize) {
+                    // start a new row
+                    x = 0;
+                    y += rowHeight + PADDING;
+                    rowHeight = 0;
+                }
+                if (y + region.getHeight() > pageSize) {
+                    break;
+                }
+                locations[last * 2] = x;
+                locations[last * 2 + 1] = y;
+                x += region.getWidth() + PADDING;
+                rowHeight = Math.max(rowHeight, region.getHeight());
+                pageWidth = Math.max(pageWidth, x);
+                last++;
+            }
+
+            // copy them into the page
+            Image page = createPage(pageWidth, y + rowHeight);
+            Graphics2D g = (Graphics2D) page.getGraphics();
+            g.setComposite(AlphaComposite.Src);
+            for (int i = first; i < last; i++) {
+                int index = order[i].intValue();
+                AtlasRegion region = getRegion(index);
+                region.setLocation(page, locations[i * 2],
+                    locations[i * 2 + 1]);
+                g.drawImage(images.get(index),
+                    region.getX(), region.getY(), null);
+            }
+            g.dispose();
+            pages.add(page);
+            first = last;
+        }
+
+        // the images are in the pages now
+        images.clear();
+        regions.clear();
+    }
+
+    /**
+     * Gets the number of packed pages.
+     *
+     * @return The number of pages
+     */
+    public synchronized int getPageCount() {
+        return pages.size();
+    }
+
+    /**
+     * Gets a packed page.
+     *
+     * @param i The index of the page
+     * @return The page image
+     */
+    public synchronized Image getPage(int i) {
+        return pages.get(i);
+    }
+
+    private AtlasRegion getRegion(int i) {
+        return regions.get(i);
+    }
+
+    private Image createPage(int width, int height) {
+        width = Math.max(width, 1);
+        height = Math.max(height, 1);
+        if (gc != null) {
+            return gc.createCompatibleImage(width, height, transparency);
+        }
+        return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+    }
+}
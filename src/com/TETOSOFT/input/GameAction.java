@@ -5,6 +5,11 @@ package com.TETOSOFT.input;
  * (such as jump, move left, fire, etc.) that can be triggered by various input
  * devices like keyboard, mouse, or gamepad. It manages the state of the action
  * and provides methods to check its status.
+ *
+ * A GameAction takes no locks, so it must only be used from one thread. The
+ * InputManager doesn't change GameActions from the AWT event thread; it
+ * queues input events, and the game thread applies them with
+ * InputManager.processEvents().
  */
 public class GameAction {
     /**
@@ -85,7 +90,7 @@ public class GameAction {
     /**
      * Performs a quick tap of this action (press followed by immediate release).
      */
-    public synchronized void tap() {
+    public void tap() {
         press();
         release();
     }
@@ -93,7 +98,7 @@ public class GameAction {
     /**
      * Marks this action as pressed with a default amount of 1.
      */
-    public synchronized void press() {
+    public void press() {
         press(1);
     }
 
@@ -103,7 +108,7 @@ public class GameAction {
      *
      * @param amount The amount or intensity of the press
      */
-    public synchronized void press(int amount) {
+    public void press(int amount) {
         if (state != STATE_WAITING_FOR_RELEASE) {
             this.amount += amount;
             state = STATE_PRESSED;
@@ -113,7 +118,7 @@ public class GameAction {
     /**
      * Marks this action as released.
      */
-    public synchronized void release() {
+    public void release() {
         state = STATE_RELEASED;
     }
 
@@ -122,7 +127,7 @@ public class GameAction {
      *
      * @return true if the action is pressed, false otherwise
      */
-    public synchronized boolean isPressed() {
+    public boolean isPressed() {
         return (getAmount() != 0);
     }
 
@@ -136,7 +141,7 @@ public class GameAction {
      *
      * @return The current amount of this action
      */
-    public synchronized int getAmount() {
+    public int getAmount() {
         int retVal = amount;
         if (retVal != 0) {
             if (state == STATE_RELEASED) {
@@ -14,7 +14,10 @@ import javax.swing.SwingUtilities;
  * processing.
  *
  * This class implements multiple listener interfaces to capture different types
- * of input events.
+ * of input events. The listener methods run on the AWT event thread; they
+ * don't change GameActions, but add timestamped press and release events to
+ * an {@link InputQueue}. The game thread applies the queued events once per
+ * tick by calling processEvents(), so reading a GameAction takes no locks.
  */
 public class InputManager implements KeyListener, MouseListener,
         MouseMotionListener, MouseWheelListener {
@@ -74,6 +77,9 @@ public class InputManager implements KeyListener, MouseListener,
     /** Flag indicating if the mouse is currently being recentered */
     private boolean isRecentering;
 
+    /** Input events waiting to be applied to their game actions */
+    private InputQueue queue = new InputQueue();
+
     /**
      * Creates a new InputManager for the specified component.
      *
@@ -209,10 +215,66 @@ public class InputManager implements KeyListener, MouseListener,
     }
 
     /**
-     * Resets all game actions to their initial state.
-     * Useful when changing game states or screens.
+     * Applies the input events that happened since the last call to their
+     * game actions. Call this from the game thread once per tick, before
+     * reading the game actions.
+     *
+     * @return The number of events applied
+     */
+    public int processEvents() {
+        return queue.drain();
+    }
+
+    /**
+     * Gets the number of input events applied by the last call to
+     * processEvents().
+     *
+     * @return The number of events applied
+     */
+    public int getProcessedEventCount() {
+        return queue.getDrainedCount();
+    }
+
+    /**
+     * Gets the time of an input event applied by the last call to
+     * processEvents(), as given by InputEvent.getWhen().
+     *
+     * @param i The index of the event, from 0 to getProcessedEventCount() - 1
+     * @return The time of the input event, in milliseconds
+     */
+    public long getProcessedEventWhen(int i) {
+        return queue.getDrainedTime(i);
+    }
+
+    /**
+     * Gets the time an input event applied by the last call to
+     * processEvents() arrived from the AWT event thread.
+     *
+     * @param i The index of the event, from 0 to getProcessedEventCount() - 1
+     * @return The System.nanoTime() at which the event arrived
+     */
+    public long getProcessedEventTime(int i) {
+        return queue.getDrainedTag(i);
+    }
+
+    /**
+     * Gets the number of input events dropped because too many happened
+     * between two calls to processEvents().
+     *
+     * @return The number of events dropped
+     */
+    public int getDroppedEventCount() {
+        return queue.getDroppedCount();
+    }
+
+    /**
+     * Resets all game actions to their initial state, throwing away any
+     * queued input events. Useful when changing game states or screens.
+     * Call this from the game thread.
      */
     public void resetAllGameActions() {
+        queue.clear();
+
         // Reset key actions
         for (int i = 0; i < keyActions.length; i++) {
             if (keyActions[i] != null) {
@@ -366,7 +428,7 @@ public class InputManager implements KeyListener, MouseListener,
     public void keyPressed(KeyEvent e) {
         GameAction gameAction = getKeyAction(e);
         if (gameAction != null) {
-            gameAction.press();
+            queue.offerPress(gameAction, 1, e.getWhen());
         }
         // make sure the key isn't processed for anything else
         e.consume();
@@ -381,7 +443,7 @@ public class InputManager implements KeyListener, MouseListener,
     public void keyReleased(KeyEvent e) {
         GameAction gameAction = getKeyAction(e);
         if (gameAction != null) {
-            gameAction.release();
+            queue.offerRelease(gameAction, e.getWhen());
         }
         // make sure the key isn't processed for anything else
         e.consume();
@@ -407,7 +469,7 @@ public class InputManager implements KeyListener, MouseListener,
     public void mousePressed(MouseEvent e) {
         GameAction gameAction = getMouseButtonAction(e);
         if (gameAction != null) {
-            gameAction.press();
+            queue.offerPress(gameAction, 1, e.getWhen());
         }
     }
 
@@ -420,7 +482,7 @@ public class InputManager implements KeyListener, MouseListener,
     public void mouseReleased(MouseEvent e) {
         GameAction gameAction = getMouseButtonAction(e);
         if (gameAction != null) {
-            gameAction.release();
+            queue.offerRelease(gameAction, e.getWhen());
         }
     }
 
@@ -482,8 +544,8 @@ public class InputManager implements KeyListener, MouseListener,
             int dy = e.getY() - mouseLocation.y;
 
             // Trigger appropriate mouse movement actions
-            mouseHelper(MOUSE_MOVE_LEFT, MOUSE_MOVE_RIGHT, dx);
-            mouseHelper(MOUSE_MOVE_UP, MOUSE_MOVE_DOWN, dy);
+            mouseHelper(MOUSE_MOVE_LEFT, MOUSE_MOVE_RIGHT, dx, e.getWhen());
+            mouseHelper(MOUSE_MOVE_UP, MOUSE_MOVE_DOWN, dy, e.getWhen());
 
             // In relative mode, recenter the mouse after processing movement
             if (isRelativeMouseMode()) {
@@ -504,7 +566,7 @@ public class InputManager implements KeyListener, MouseListener,
      */
     public void mouseWheelMoved(MouseWheelEvent e) {
         mouseHelper(MOUSE_WHEEL_UP, MOUSE_WHEEL_DOWN,
-                e.getWheelRotation());
+                e.getWheelRotation(), e.getWhen());
     }
 
     /**
@@ -514,9 +576,10 @@ public class InputManager implements KeyListener, MouseListener,
      * @param codeNeg The action code for negative movement
      * @param codePos The action code for positive movement
      * @param amount  The amount of movement (negative or positive)
+     * @param time    The time of the mouse event, in milliseconds
      */
     private void mouseHelper(int codeNeg, int codePos,
-            int amount) {
+            int amount, long time) {
         GameAction gameAction;
         if (amount < 0) {
             gameAction = mouseActions[codeNeg];
@@ -524,8 +587,8 @@ public class InputManager implements KeyListener, MouseListener,
             gameAction = mouseActions[codePos];
         }
         if (gameAction != null) {
-            gameAction.press(Math.abs(amount));
-            gameAction.release();
+            queue.offerPress(gameAction, Math.abs(amount), time);
+            queue.offerRelease(gameAction, time);
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,214 @@
+package com.TETOSOFT.input;
+
+/**
+ * The InputQueue class is a fixed-size ring buffer of input events
+ * passed from one producer thread (the AWT event thread, which calls the
+ * listener methods of InputManager) to one consumer thread (the game
+ * loop). It takes no locks: the producer only writes the tail and the
+ * consumer only writes the head, and each publishes its index with a
+ * volatile write after it has finished with the slots.
+ *
+ * Each event is a press or release of a GameAction with the time of the
+ * input event, as given by InputEvent.getWhen(). The events are applied
+ * to their GameActions, in order, when the consumer drains the queue.
+ * Since a press and a release are separate events, a press and release
+ * that both happen between two drains is still seen as one press.
+ *
+ * Each event is also tagged with the System.nanoTime() at which it was
+ * queued. The times and tags of the events applied by the last drain can
+ * be read back, to measure how long the game takes to show the result of
+ * an input, both from the input event and from its arrival in the queue.
+ *
+ * If the queue is full, new events are dropped and counted.
+ */
+public class InputQueue {
+    /** The default number of events the queue holds */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    /** Event type of a press */
+    private static final int PRESS = 0;
+
+    /** Event type of a release */
+    private static final int RELEASE = 1;
+
+    /** The events, by slot */
+    private final GameAction[] actions;
+    private final int[] types;
+    private final int[] amounts;
+    private final long[] times;
+    private final long[] tags;
+
+    /** The times and tags of the events applied by the last drain */
+    private final long[] drainedTimes;
+    private final long[] drainedTags;
+    private int drainedCount;
+
+    /** Capacity - 1, to turn an index into a slot */
+    private final int mask;
+
+    /** The index of the next event to drain, written by the consumer */
+    private volatile long head;
+
+    /** The index of the next event to add, written by the producer */
+    private volatile long tail;
+
+    /** Events dropped because the queue was full, written by the producer */
+    private volatile int droppedCount;
+
+    /**
+     * Creates a new InputQueue that holds DEFAULT_CAPACITY events.
+     */
+    public InputQueue() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a new InputQueue that holds the specified number of events,
+     * rounded up to a power of two.
+     *
+     * @param capacity The number of events the queue holds
+     */
+    public InputQueue(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        actions = new GameAction[size];
+        types = new int[size];
+        amounts = new int[size];
+        times = new long[size];
+        tags = new long[size];
+        drainedTimes = new long[size];
+        drainedTags = new long[size];
+        mask = size - 1;
+    }
+
+    /**
+     * Adds a press of a GameAction. Called from the producer thread only.
+     *
+     * @param action The action pressed
+     * @param amount The amount of the press
+     * @param time   The time of the input event, in milliseconds
+     * @return true if the event was added, false if the queue was full
+     */
+    public boolean offerPress(GameAction action, int amount, long time) {
+        return offer(action, PRESS, amount, time);
+    }
+
+    /**
+     * Adds a release of a GameAction. Called from the producer thread only.
+     *
+     * @param action The action released
+     * @param time   The time of the input event, in milliseconds
+     * @return true if the event was added, false if the queue was full
+     */
+    public boolean offerRelease(GameAction action, long time) {
+        return offer(action, RELEASE, 0, time);
+    }
+
+    private boolean offer(GameAction action, int type, int amount,
+            long time) {
+        long t = tail;
+        if (t - head > mask) {
+            droppedCount++;
+            return false;
+        }
+        int slot = (int) t & mask;
+        actions[slot] = action;
+        types[slot] = type;
+        amounts[slot] = amount;
+        times[slot] = time;
+        tags[slot] = System.nanoTime();
+
+        // publish the event
+        tail = t + 1;
+        return true;
+    }
+
+    /**
+     * Applies every event in the queue to its GameAction, in the order
+     * the events happened. Called from the consumer thread only.
+     *
+     * @return The number of events applied
+     */
+    public int drain() {
+        long h = head;
+        long t = tail;
+        drainedCount = 0;
+        for (long i = h; i < t; i++) {
+            int slot = (int) i & mask;
+            GameAction action = actions[slot];
+            actions[slot] = null;
+            drainedTimes[drainedCount] = times[slot];
+            drainedTags[drainedCount++] = tags[slot];
+            if (types[slot] == PRESS) {
+                action.press(amounts[slot]);
+            } else {
+                action.release();
+            }
+        }
+
+        // give the slots back to the producer
+        head = t;
+        return (int) (t - h);
+    }
+
+    /**
+     * Gets the number of events applied by the last drain.
+     *
+     * @return The number of events applied
+     */
+    public int getDrainedCount() {
+        return drainedCount;
+    }
+
+    /**
+     * Gets the time of an event applied by the last drain, as given by
+     * InputEvent.getWhen().
+     *
+     * @param i The index of the event, from 0 to getDrainedCount() - 1
+     * @return The time of the input event, in milliseconds
+     */
+    public long getDrainedTime(int i) {
+        return drainedTimes[i];
+    }
+
+    /**
+     * Gets the tag of an event applied by the last drain: the
+     * System.nanoTime() at which it was queued.
+     *
+     * @param i The index of the event, from 0 to getDrainedCount() - 1
+     * @return The time the event was queued, in nanoseconds
+     */
+    public long getDrainedTag(int i) {
+        return drainedTags[i];
+    }
+
+    /**
+     * Throws away every event in the queue without applying it. Called
+     * from the consumer thread only.
+     */
+    public void clear() {
+        long h = head;
+        long t = tail;
+        for (long i = h; i < t; i++) {
+            actions[(int) i & mask] = null;
+        }
+        head = t;
+    }
+
+    /**
+     * Gets the number of events waiting in the queue.
+     *
+     * @return The number of events waiting
+     */
+    public int size() {
+        return (int) (tail - head);
+    }
+
+    /**
+     * Gets the number of events dropped because the queue was full.
+     *
+     * @return The number of events dropped
+     */
+    public int getDroppedCount() {
+        return droppedCount;
+    }
+}
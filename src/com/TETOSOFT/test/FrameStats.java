@@ -0,0 +1,238 @@
+package com.TETOSOFT.test;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+    The FrameStats class keeps timing statistics of the game loop:
+    a Histogram of whole frame times, a Histogram for each phase of
+    a frame (input, update, draw, show and sync), and the times of
+    the most recent frames, so the slowest of them can be listed.
+
+    <p>The game loop adds the time of each phase with add() as it
+    goes, and calls endFrame() once per frame. All times are in
+    nanoseconds. Memory use is fixed, so keeping statistics never
+    allocates; only the report does.
+*/
+public class FrameStats {
+
+    /** Handling input, as part of update */
+    public static final int INPUT = 0;
+
+    /** Updating the game, not counting input */
+    public static final int UPDATE = 1;
+
+    /** Drawing the frame into the back buffer */
+    public static final int DRAW = 2;
+
+    /** Showing the back buffer */
+    public static final int SHOW = 3;
+
+    /** Syncing with the display */
+    public static final int SYNC = 4;
+
+    /** The number of phases */
+    public static final int NUM_PHASES = 5;
+
+    /** The number of recent frames kept */
+    public static final int RECENT_FRAMES = 120;
+
+    private static final String[] PHASE_NAMES = {
+        "input", "update", "draw", "show", "sync"
+    };
+
+    private static final int SLOWEST_LISTED = 5;
+
+    private Histogram frameTimes = new Histogram();
+    private Histogram[] phaseTimes = new Histogram[NUM_PHASES];
+    private long[] current = new long[NUM_PHASES];
+    private long lastFrameEnd;
+    private long frameCount;
+
+    // the recent frames, as a ring
+    private long[] recentNumbers = new long[RECENT_FRAMES];
+    private long[] recentTimes = new long[RECENT_FRAMES];
+    private long[][] recentPhases = new long[RECENT_FRAMES][NUM_PHASES];
+    private int recentCount;
+    private int nextRecent;
+
+    /**
+        Creates a new, empty FrameStats.
+    */
+    public FrameStats() {
+        for (int i=0; i<NUM_PHASES; i++) {
+            phaseTimes[i] = new Histogram();
+        }
+    }
+
+
+    /**
+        Adds time spent in a phase of the current frame. A phase
+        can be added to more than once in a frame, for example
+        once for each tick.
+    */
+    public void add(int phase, long nanos) {
+        current[phase] += nanos;
+    }
+
+
+    /**
+        Ends the current frame at the specified System.nanoTime().
+        The frame time is the time since the last frame ended, so
+        the first frame only starts the clock.
+    */
+    public void endFrame(long now) {
+        // input is handled inside update(), so it was counted twice
+        current[UPDATE] = Math.max(0, current[UPDATE] - current[INPUT]);
+
+        if (lastFrameEnd != 0) {
+            long frameTime = now - lastFrameEnd;
+            frameTimes.record(frameTime);
+            recentNumbers[nextRecent] = frameCount;
+            recentTimes[nextRecent] = frameTime;
+            for (int i=0; i<NUM_PHASES; i++) {
+                phaseTimes[i].record(current[i]);
+                recentPhases[nextRecent][i] = current[i];
+            }
+            nextRecent = (nextRecent + 1) % RECENT_FRAMES;
+            recentCount = Math.min(recentCount + 1, RECENT_FRAMES);
+            frameCount++;
+        }
+        for (int i=0; i<NUM_PHASES; i++) {
+            current[i] = 0;
+        }
+        lastFrameEnd = now;
+    }
+
+
+    /**
+        Gets the number of frames timed.
+    */
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+
+    /**
+        Gets the Histogram of whole frame times.
+    */
+    public Histogram getFrameTimes() {
+        return frameTimes;
+    }
+
+
+    /**
+        Gets the Histogram of the times of a phase.
+    */
+    public Histogram getPhaseTimes(int phase) {
+        return phaseTimes[phase];
+    }
+
+
+    /**
+        Gets the name of a phase.
+    */
+    public static String getPhaseName(int phase) {
+        return PHASE_NAMES[phase];
+    }
+
+
+    /**
+        Gets the frames per second over the recent frames, or 0 if
+        no frames have been timed.
+    */
+    public float getFps() {
+        long total = 0;
+        for (int i=0; i<recentCount; i++) {
+            total += recentTimes[i];
+        }
+        return (total == 0) ? 0 : recentCount * 1e9f / total;
+    }
+
+
+    /**
+        Gets a report of the statistics, as lines of text: the
+        frame rate, the percentiles of the frame time and of each
+        phase, and the slowest of the recent frames.
+    */
+    public List<String> getReport() {
+        List<String> lines = new ArrayList<String>();
+        lines.add("FPS " + format(getFps()) + " (" + frameCount +
+            " frames)");
+        lines.add(formatTimes("frame ", frameTimes));
+        for (int i=0; i<NUM_PHASES; i++) {
+            lines.add(formatTimes(pad(PHASE_NAMES[i], 6), phaseTimes[i]));
+        }
+
+        lines.add("slowest of the last " + recentCount + " frames:");
+        boolean[] listed = new boolean[RECENT_FRAMES];
+        for (int n=0; n<SLOWEST_LISTED && n<recentCount; n++) {
+            int slowest = -1;
+            for (int i=0; i<recentCount; i++) {
+                if (!listed[i] && (slowest == -1 ||
+                    recentTimes[i] > recentTimes[slowest]))
+                {
+                    slowest = i;
+                }
+            }
+            listed[slowest] = true;
+            StringBuffer line = new StringBuffer();
+            line.append("#").append(recentNumbers[slowest]).append(" ");
+            line.append(LatencyTracker.toMillis(recentTimes[slowest]));
+            line.append(" ms:");
+            for (int i=0; i<NUM_PHASES; i++) {
+                line.append(" ").append(PHASE_NAMES[i]).append(" ");
+                line.append(LatencyTracker.toMillis(
+                    recentPhases[slowest][i]));
+            }
+            lines.add(line.toString());
+        }
+        return lines;
+    }
+
+
+    /**
+        Writes the report to a text file.
+    */
+    public void writeReport(File file) throws IOException {
+        PrintWriter out = new PrintWriter(new FileWriter(file));
+        try {
+            List<String> lines = getReport();
+            for (int i=0; i<lines.size(); i++) {
+                out.println(lines.get(i));
+            }
+        }
+        finally {
+            out.close();
+        }
+        if (out.checkError()) {
+            throw new IOException("Couldn't write " + file);
+        }
+    }
+
+
+    private static String formatTimes(String name, Histogram histogram) {
+        return name + " p50 " +
+            LatencyTracker.toMillis(histogram.getPercentile(50)) +
+            "  p99 " + LatencyTracker.toMillis(histogram.getPercentile(99)) +
+            "  p99.9 " +
+            LatencyTracker.toMillis(histogram.getPercentile(99.9)) +
+            "  max " + LatencyTracker.toMillis(histogram.getMax()) + " ms";
+    }
+
+
+    private static String format(float value) {
+        return Float.toString(Math.round(value * 10) / 10f);
+    }
+
+
+    private static String pad(String s, int width) {
+        StringBuffer padded = new StringBuffer(s);
+        while (padded.length() < width) {
+            padded.append(' ');
+        }
+        return padded.toString();
+    }
+
+}
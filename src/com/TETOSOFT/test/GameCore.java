@@ -25,9 +25,39 @@ public abstract class GameCore {
         new DisplayMode(1024, 768, 24, 0),
     };
 
+    /**
+        Default number of fixed simulation ticks per second.
+    */
+    public static final int DEFAULT_TICK_RATE = 60;
+
+    /**
+        Default maximum number of ticks run to catch up after a
+        slow frame before the remaining backlog is dropped.
+    */
+    public static final int DEFAULT_MAX_CATCH_UP_TICKS = 5;
+
+    /**
+        Highest tick rate. update() takes whole milliseconds, so
+        a tick can't be shorter than one.
+    */
+    public static final int MAX_TICK_RATE = 1000;
+
     private boolean isRunning;
     protected ScreenManager screen;
 
+    private boolean fixedTimestep = true;
+    private int tickRate;
+    private long tickNanos;
+    private int maxCatchUpTicks = DEFAULT_MAX_CATCH_UP_TICKS;
+    private float interpolation = 1;
+    private LatencyTracker inputLatency = new LatencyTracker();
+    private FrameStats frameStats = new FrameStats();
+
+
+    public GameCore() {
+        setTickRate(DEFAULT_TICK_RATE);
+    }
+
 
     /**
         Signals the game loop that it's time to quit
@@ -47,6 +77,9 @@ public abstract class GameCore {
         }
         finally {
             screen.restoreScreen();
+            if (inputLatency.getHistogram().getCount() > 0) {
+                System.out.println(inputLatency.getSummary());
+            }
             lazilyExit();
         }
     }
@@ -87,7 +120,7 @@ public abstract class GameCore {
         screen.setFullScreen(displayMode);
 
         Window window = screen.getFullScreenWindow();
-        window.setFont(new Font("Dialog", Font.PLAIN, FONT_SIZE));
+        window.setFont(createFont());
         window.setBackground(Color.BLACK);
         window.setForeground(Color.WHITE);
 
@@ -95,15 +128,202 @@ public abstract class GameCore {
     }
 
 
+    /**
+        Initiates the game without a screen, for running the
+        simulation on a machine with no display. Only update()
+        may be called afterwards; nothing is drawn.
+    */
+    public void initHeadless() {
+        isRunning = true;
+    }
+
+
+    /**
+        Checks if the game is still running, that is, stop() has
+        not been called since init().
+    */
+    public boolean isRunning() {
+        return isRunning;
+    }
+
+
     public Image loadImage(String fileName) {
         return new ImageIcon(fileName).getImage();
     }
 
 
+    /**
+        Creates the font used for text in the game window.
+    */
+    protected Font createFont() {
+        return new Font("Dialog", Font.PLAIN, FONT_SIZE);
+    }
+
+
+    /**
+        Sets whether the game loop runs update() with a fixed
+        timestep (the default) or with the raw time elapsed
+        since the last frame.
+    */
+    public void setFixedTimestep(boolean fixedTimestep) {
+        this.fixedTimestep = fixedTimestep;
+    }
+
+
+    /**
+        Checks if the game loop runs update() with a fixed
+        timestep.
+    */
+    public boolean isFixedTimestep() {
+        return fixedTimestep;
+    }
+
+
+    /**
+        Sets the number of simulation ticks per second used in
+        fixed timestep mode, from 1 to MAX_TICK_RATE. The tick
+        length is kept in nanoseconds, and since update() takes
+        whole milliseconds, the time passed to it carries the
+        remainder from tick to tick: 60 ticks per second runs
+        ticks of 16 and 17 ms that add up to exactly one second.
+    */
+    public void setTickRate(int ticksPerSecond) {
+        if (ticksPerSecond <= 0 || ticksPerSecond > MAX_TICK_RATE) {
+            throw new IllegalArgumentException(
+                "Tick rate must be from 1 to " + MAX_TICK_RATE + ": " +
+                ticksPerSecond);
+        }
+        tickRate = ticksPerSecond;
+        tickNanos = 1000000000L / ticksPerSecond;
+    }
+
+
+    /**
+        Gets the length of one fixed simulation tick, rounded to
+        whole milliseconds, for running the game without the game
+        loop.
+    */
+    public long getTickTime() {
+        return Math.round(tickNanos / 1000000.0);
+    }
+
+
+    /**
+        Gets the exact length of one fixed simulation tick in
+        nanoseconds.
+    */
+    public long getTickNanos() {
+        return tickNanos;
+    }
+
+
+    /**
+        Sets the maximum number of ticks run in a single frame
+        to catch up with real time. Any backlog beyond that is
+        dropped so a long stall slows the game down instead of
+        making it spiral.
+    */
+    public void setMaxCatchUpTicks(int maxCatchUpTicks) {
+        this.maxCatchUpTicks = Math.max(1, maxCatchUpTicks);
+    }
+
+
+    /**
+        Gets how far, from 0 to 1, real time has advanced past
+        the last simulation tick. Drawing code uses it to blend
+        between the previous and current Sprite positions. It is
+        always 1 in variable timestep mode.
+    */
+    protected float getInterpolation() {
+        return interpolation;
+    }
+
+
+    /**
+        Gets the tracker of input-to-photon latency. Subclasses
+        add a tag to it for each input event they handle; the
+        game loop matches the tags to the next frame shown.
+    */
+    public LatencyTracker getInputLatency() {
+        return inputLatency;
+    }
+
+
+    /**
+        Gets the timing statistics of the game loop. The loop
+        times update, draw, show and sync; subclasses add the time
+        they spend handling input.
+    */
+    public FrameStats getFrameStats() {
+        return frameStats;
+    }
+
+
     /**
         Runs through the game loop until stop() is called.
     */
     public void gameLoop() {
+        if (fixedTimestep) {
+            fixedTimestepLoop();
+        }
+        else {
+            variableTimestepLoop();
+        }
+    }
+
+
+    /**
+        Runs update() with fixed ticks of getTickNanos(), driven
+        by an accumulator of real time, and draws as fast as
+        possible in between.
+    */
+    private void fixedTimestepLoop() {
+        long currTime = System.nanoTime();
+        long accumulator = 0;
+
+        // the ticks run, and the game time passed to update() for
+        // them in whole milliseconds
+        long tickCount = 0;
+        long gameMillis = 0;
+
+        while (isRunning) {
+            long now = System.nanoTime();
+            accumulator += now - currTime;
+            currTime = now;
+
+            // run the ticks that are due, up to the catch-up cap
+            int ticks = 0;
+            long updateStart = System.nanoTime();
+            GameEvents.Update event = beginUpdate();
+            while (accumulator >= tickNanos && ticks < maxCatchUpTicks) {
+                tickCount++;
+                long elapsedTime = tickCount * 1000 / tickRate - gameMillis;
+                gameMillis += elapsedTime;
+                update(elapsedTime);
+                accumulator -= tickNanos;
+                ticks++;
+            }
+            endUpdate(event, ticks);
+
+            // too far behind - drop the backlog
+            if (accumulator >= tickNanos) {
+                accumulator %= tickNanos;
+            }
+            interpolation = (float)accumulator / tickNanos;
+            frameStats.add(FrameStats.UPDATE,
+                System.nanoTime() - updateStart);
+
+            drawFrame();
+        }
+        interpolation = 1;
+    }
+
+
+    /**
+        Runs update() once per frame with the time elapsed since
+        the previous frame.
+    */
+    private void variableTimestepLoop() {
         long startTime = System.currentTimeMillis();
         long currTime = startTime;
 
@@ -113,13 +333,14 @@ public abstract class GameCore {
             currTime += elapsedTime;
 
             // update
+            long updateStart = System.nanoTime();
+            GameEvents.Update event = beginUpdate();
             update(elapsedTime);
+            endUpdate(event, 1);
+            frameStats.add(FrameStats.UPDATE,
+                System.nanoTime() - updateStart);
 
-            // draw the screen
-            Graphics2D g = screen.getGraphics();
-            draw(g);
-            g.dispose();
-            screen.update();
+            drawFrame();
 
             // don't take a nap! run as fast as possible
             /*try {
@@ -130,6 +351,82 @@ public abstract class GameCore {
     }
 
 
+    /**
+        Draws the screen and shows it, timing each phase, then
+        ends the frame.
+    */
+    private void drawFrame() {
+        long drawStart = System.nanoTime();
+        GameEvents.Draw event = null;
+        if (GameEvents.isRecording()) {
+            event = new GameEvents.Draw();
+            event.begin();
+        }
+        Graphics2D g = screen.getGraphics();
+        draw(g);
+        g.dispose();
+        if (event != null) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.sprites = getSpriteCount();
+                event.commit();
+            }
+        }
+        long showStart = System.nanoTime();
+        screen.show();
+        long syncStart = System.nanoTime();
+        screen.sync();
+        long frameEnd = System.nanoTime();
+        inputLatency.frameShown(screen.getLastShowTime());
+
+        frameStats.add(FrameStats.DRAW, showStart - drawStart);
+        frameStats.add(FrameStats.SHOW, syncStart - showStart);
+        frameStats.add(FrameStats.SYNC, frameEnd - syncStart);
+        frameStats.endFrame(frameEnd);
+    }
+
+
+    /**
+        Begins the Update event of a frame, or returns null if the
+        Flight Recorder isn't running.
+    */
+    private GameEvents.Update beginUpdate() {
+        if (!GameEvents.isRecording()) {
+            return null;
+        }
+        GameEvents.Update event = new GameEvents.Update();
+        event.begin();
+        return event;
+    }
+
+
+    /**
+        Ends the Update event of a frame that ran the specified
+        number of ticks.
+    */
+    private void endUpdate(GameEvents.Update event, int ticks) {
+        if (event == null) {
+            return;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.ticks = ticks;
+            event.sprites = getSpriteCount();
+            event.commit();
+        }
+    }
+
+
+    /**
+        Gets the number of sprites in the game, for the Update and
+        Draw events. Subclasses with sprites should override this
+        method.
+    */
+    protected int getSpriteCount() {
+        return 0;
+    }
+
+
     /**
         Updates the state of the game/animation based on the
         amount of elapsed time that has passed.
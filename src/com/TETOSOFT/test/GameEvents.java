@@ -0,0 +1,213 @@
+package com.TETOSOFT.test;
+
+import java.util.List;
+
+import jdk.jfr.*;
+
+/**
+    The GameEvents class holds the Java Flight Recorder events the
+    game emits, so a session can be recorded with
+    -XX:StartFlightRecording and looked at in JDK Mission Control
+    next to the GC and JIT events.
+
+    <p>Events are only created while isRecording() is true, that
+    is while a recording is running, whether it was started on
+    the command line or later with jcmd. Creating events would
+    allocate on every tick, so once the last recording stops, the
+    game stops creating them. Until a recording first starts, the
+    game doesn't even load the event classes: loading the first
+    one sets up the recorder's instrumentation, which takes a
+    good fraction of a second. The events don't record stack
+    traces, to keep them cheap.
+*/
+public class GameEvents {
+
+    private static final String CATEGORY = "SuperMiro";
+
+    private static volatile boolean recording;
+
+    static {
+        FlightRecorder.addListener(new FlightRecorderListener() {
+            public void recorderInitialized(FlightRecorder recorder) {
+                checkRecordings();
+            }
+
+            public void recordingStateChanged(Recording changed) {
+                checkRecordings();
+            }
+        });
+        checkRecordings();
+    }
+
+    private GameEvents() { }
+
+
+    /**
+        Checks if a Flight Recorder recording is running, so events
+        should be created.
+    */
+    public static boolean isRecording() {
+        return recording;
+    }
+
+
+    /**
+        Updates the recording flag from the recordings that are
+        running. Called when the recorder starts and whenever a
+        recording changes state, on the thread that changed it.
+    */
+    private static synchronized void checkRecordings() {
+        boolean running = false;
+        if (FlightRecorder.isInitialized()) {
+            List<Recording> recordings =
+                FlightRecorder.getFlightRecorder().getRecordings();
+            for (int i=0; i<recordings.size() && !running; i++) {
+                running = (recordings.get(i).getState() ==
+                    RecordingState.RUNNING);
+            }
+        }
+        recording = running;
+    }
+
+
+    /**
+        The update phase of a frame: every simulation tick the
+        game loop ran for the frame.
+    */
+    @Name("com.TETOSOFT.Update")
+    @Label("Update")
+    @Category({CATEGORY, "Game Loop"})
+    @Description("The update phase of a frame")
+    @StackTrace(false)
+    public static class Update extends Event {
+        @Label("Ticks")
+        @Description("Simulation ticks run in the frame")
+        public int ticks;
+
+        @Label("Sprites")
+        @Description("Sprites in the game")
+        public int sprites;
+    }
+
+
+    /**
+        The draw phase of a frame.
+    */
+    @Name("com.TETOSOFT.Draw")
+    @Label("Draw")
+    @Category({CATEGORY, "Game Loop"})
+    @Description("The draw phase of a frame")
+    @StackTrace(false)
+    public static class Draw extends Event {
+        @Label("Sprites")
+        @Description("Sprites in the game")
+        public int sprites;
+    }
+
+
+    /**
+        One simulation tick.
+    */
+    @Name("com.TETOSOFT.Tick")
+    @Label("Tick")
+    @Category({CATEGORY, "Game Loop"})
+    @Description("One simulation tick")
+    @StackTrace(false)
+    public static class Tick extends Event {
+        @Label("Elapsed Time")
+        @Timespan(Timespan.MILLISECONDS)
+        public long elapsedTime;
+
+        @Label("Sprites")
+        @Description("Sprites in the map")
+        public int sprites;
+
+        @Label("Active Sprites")
+        @Description("Sprites near the screen, which were updated")
+        public int activeSprites;
+
+        @Label("Creatures")
+        @Description("Creatures moved by the physics batch")
+        public int creatures;
+    }
+
+
+    /**
+        A map loaded from a file, or from the template cache.
+    */
+    @Name("com.TETOSOFT.MapLoad")
+    @Label("Map Load")
+    @Category({CATEGORY, "Maps"})
+    @StackTrace(false)
+    public static class MapLoad extends Event {
+        @Label("File Name")
+        public String fileName;
+
+        @Label("Reload")
+        @Description("The map was reloaded to start it over")
+        public boolean reload;
+
+        @Label("Cache Hit")
+        @Description("The parsed map was taken from the template cache")
+        public boolean cacheHit;
+
+        @Label("Parse Time")
+        @Description("Time reading and parsing the file, 0 on a cache hit")
+        @Timespan(Timespan.NANOSECONDS)
+        public long parseTime;
+
+        @Label("Sprites")
+        public int sprites;
+    }
+
+
+    /**
+        A sampled check of a Sprite's move against the tiles.
+    */
+    @Name("com.TETOSOFT.TileCollision")
+    @Label("Tile Collision")
+    @Category({CATEGORY, "Collisions"})
+    @Description("A sampled sweep of a sprite's move against the tiles")
+    @StackTrace(false)
+    public static class TileCollision extends Event {
+        @Label("Sample Interval")
+        @Description("One in this many sweeps is recorded")
+        public int sampleInterval;
+
+        @Label("Sprite")
+        public String sprite;
+
+        @Label("Distance")
+        @Description("Length of the move, in pixels")
+        public float distance;
+
+        @Label("Hit")
+        public boolean hit;
+    }
+
+
+    /**
+        A sampled check of a Sprite against the Sprites near it.
+    */
+    @Name("com.TETOSOFT.SpriteCollision")
+    @Label("Sprite Collision")
+    @Category({CATEGORY, "Collisions"})
+    @Description("A sampled check of a sprite against nearby sprites")
+    @StackTrace(false)
+    public static class SpriteCollision extends Event {
+        @Label("Sample Interval")
+        @Description("One in this many checks is recorded")
+        public int sampleInterval;
+
+        @Label("Sprite")
+        public String sprite;
+
+        @Label("Candidates")
+        @Description("Sprites in the nearby grid cells")
+        public int candidates;
+
+        @Label("Hit")
+        public boolean hit;
+    }
+
+}
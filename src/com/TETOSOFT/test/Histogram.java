@@ -0,0 +1,154 @@
+package com.TETOSOFT.test;
+
+/**
+    The Histogram class counts values, such as times in
+    nanoseconds, in a fixed number of buckets, so recording a
+    value never allocates and the memory used doesn't grow.
+
+    <p>Buckets grow in size with the values they hold: each power
+    of two is split into 16 buckets, so a percentile read from the
+    histogram is within about 6% of the true value, from 1 up to
+    Long.MAX_VALUE. Values below 16 are counted exactly.
+
+    <p>A Histogram isn't thread-safe; it should be recorded and
+    read by one thread.
+*/
+public class Histogram {
+
+    // each power of two is split into 2^SUB_BITS buckets
+    private static final int SUB_BITS = 4;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int NUM_BUCKETS = (64 - SUB_BITS) * SUB_COUNT;
+
+    private long[] counts = new long[NUM_BUCKETS];
+    private long count;
+    private long total;
+    private long min = Long.MAX_VALUE;
+    private long max;
+
+    /**
+        Records a value. Negative values are recorded as 0.
+    */
+    public void record(long value) {
+        value = Math.max(value, 0);
+        counts[getBucket(value)]++;
+        count++;
+        total += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+
+    /**
+        Gets the number of values recorded.
+    */
+    public long getCount() {
+        return count;
+    }
+
+
+    /**
+        Gets the smallest value recorded, or 0 if there are none.
+    */
+    public long getMin() {
+        return (count == 0) ? 0 : min;
+    }
+
+
+    /**
+        Gets the largest value recorded, or 0 if there are none.
+    */
+    public long getMax() {
+        return max;
+    }
+
+
+    /**
+        Gets the mean of the values recorded, or 0 if there are
+        none.
+    */
+    public double getMean() {
+        return (count == 0) ? 0 : (double)total / count;
+    }
+
+
+    /**
+        Gets the value that the specified percentage of the values
+        recorded are at or below, for example 99.9 for the 99.9th
+        percentile. The value is the top of the bucket it falls in,
+        but never more than the largest value recorded. Returns 0
+        if there are no values.
+    */
+    public long getPercentile(double percent) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long)Math.ceil(count * Math.min(percent, 100) / 100);
+        rank = Math.max(rank, 1);
+        long seen = 0;
+        for (int i=0; i<NUM_BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(getBucketTop(i), max);
+            }
+        }
+        return max;
+    }
+
+
+    /**
+        Adds every value recorded by another Histogram to this
+        one.
+    */
+    public void add(Histogram other) {
+        for (int i=0; i<NUM_BUCKETS; i++) {
+            counts[i] += other.counts[i];
+        }
+        count += other.count;
+        total += other.total;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+
+    /**
+        Forgets every value recorded.
+    */
+    public void reset() {
+        for (int i=0; i<NUM_BUCKETS; i++) {
+            counts[i] = 0;
+        }
+        count = 0;
+        total = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+    }
+
+
+    /**
+        Gets the bucket that holds a value of 0 or more.
+    */
+    private static int getBucket(long value) {
+        if (value < SUB_COUNT) {
+            return (int)value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int)(value >>> (exponent - SUB_BITS)) & (SUB_COUNT - 1);
+        return ((exponent - SUB_BITS + 1) << SUB_BITS) + sub;
+    }
+
+
+    /**
+        Gets the largest value a bucket holds.
+    */
+    private static long getBucketTop(int bucket) {
+        if (bucket < SUB_COUNT) {
+            return bucket;
+        }
+        int exponent = (bucket >> SUB_BITS) + SUB_BITS - 1;
+        long sub = bucket & (SUB_COUNT - 1);
+        long bottom = (SUB_COUNT + sub) << (exponent - SUB_BITS);
+        return bottom + (1L << (exponent - SUB_BITS)) - 1;
+    }
+
+}
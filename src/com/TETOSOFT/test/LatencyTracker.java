@@ -0,0 +1,122 @@
+package com.TETOSOFT.test;
+
+/**
+    The LatencyTracker class measures input-to-photon latency:
+    the time to the first frame shown after the game has handled
+    an input event. Each input event handled adds a tag, the
+    System.nanoTime() at which the event arrived, along with the
+    time of the input event itself, as given by
+    InputEvent.getWhen(); when a frame is shown, every tag older
+    than it is matched to it. Two latencies are recorded, each in
+    its own Histogram: from the input event, which includes the
+    time the system and the AWT event thread took to deliver it,
+    and from its arrival.
+
+    <p>The time of the input event is on the System.currentTimeMillis()
+    clock, so it is moved onto the System.nanoTime() clock when it is
+    added. It is only as exact as a millisecond, and is never later
+    than the arrival.
+
+    <p>Tags are kept in a fixed array, so tracking never
+    allocates. If more events than that are handled between two
+    frames, the extra tags are dropped.
+*/
+public class LatencyTracker {
+
+    private static final int MAX_PENDING = 256;
+
+    private long[] pending = new long[MAX_PENDING];
+    private long[] pendingEvents = new long[MAX_PENDING];
+    private int numPending;
+    private Histogram histogram = new Histogram();
+    private Histogram eventHistogram = new Histogram();
+
+    /**
+        Adds the tag of an input event the game has handled. The
+        tag is the System.nanoTime() at which the event arrived,
+        and eventWhen is the time of the input event, in
+        milliseconds, as given by InputEvent.getWhen().
+    */
+    public void addInput(long arrivalTime, long eventWhen) {
+        if (numPending < MAX_PENDING) {
+            long age = System.currentTimeMillis() - eventWhen;
+            long eventTime = System.nanoTime() - age * 1000000;
+            pending[numPending] = arrivalTime;
+            pendingEvents[numPending++] = Math.min(eventTime, arrivalTime);
+        }
+    }
+
+
+    /**
+        Matches the tags to a frame shown at the specified
+        System.nanoTime(), recording their latencies. Tags newer
+        than the frame wait for the next one.
+    */
+    public void frameShown(long showTime) {
+        int kept = 0;
+        for (int i=0; i<numPending; i++) {
+            if (pending[i] <= showTime) {
+                histogram.record(showTime - pending[i]);
+                eventHistogram.record(showTime - pendingEvents[i]);
+            }
+            else {
+                pending[kept] = pending[i];
+                pendingEvents[kept++] = pendingEvents[i];
+            }
+        }
+        numPending = kept;
+    }
+
+
+    /**
+        Gets the Histogram of latencies from the arrival of each
+        event, in nanoseconds.
+    */
+    public Histogram getHistogram() {
+        return histogram;
+    }
+
+
+    /**
+        Gets the Histogram of latencies from the time of each
+        input event, in nanoseconds.
+    */
+    public Histogram getEventHistogram() {
+        return eventHistogram;
+    }
+
+
+    /**
+        Gets a summary of the latencies: the number of events, then
+        a line each for the latencies from the input event and from
+        its arrival, with the 50th, 99th and 99.9th percentiles in
+        milliseconds.
+    */
+    public String getSummary() {
+        return "Input latency: " + histogram.getCount() + " events\n" +
+            formatLatencies("  from the input event: ", eventHistogram) +
+            "\n" + formatLatencies("  from its arrival:     ", histogram);
+    }
+
+
+    private static String formatLatencies(String name,
+        Histogram histogram)
+    {
+        return name + "p50 " +
+            toMillis(histogram.getPercentile(50)) + " ms, p99 " +
+            toMillis(histogram.getPercentile(99)) + " ms, p99.9 " +
+            toMillis(histogram.getPercentile(99.9)) + " ms, max " +
+            toMillis(histogram.getMax()) + " ms";
+    }
+
+
+    /**
+        Formats nanoseconds as milliseconds with two decimals.
+    */
+    public static String toMillis(long nanos) {
+        long hundredths = (nanos + 5000) / 10000;
+        long fraction = hundredths % 100;
+        return (hundredths / 100) + (fraction < 10 ? ".0" : ".") + fraction;
+    }
+
+}
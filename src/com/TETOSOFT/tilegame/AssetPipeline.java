@@ -0,0 +1,387 @@
+package com.TETOSOFT.tilegame;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import javax.imageio.ImageIO;
+
+/**
+    The AssetPipeline class decodes images on a small pool of
+    worker threads, so startup time scales with the number of
+    cores instead of the number of image files.
+
+    <p>Each request returns a Future right away. Images are read
+    with ImageIO and copied into display-compatible images on the
+    workers, and mirrored or flipped copies can be requested from
+    the Future of another image. Call join() once everything has
+    been requested, then get the finished images with getImage().
+
+    <p>If the pipeline has an ImageCache, mirrored and flipped
+    copies are read from it when their source file hasn't changed,
+    and stored in it when they have to be made.
+
+    <p>The time spent on each asset is recorded, along with the
+    total time from creating the pipeline to the end of join().
+*/
+public class AssetPipeline {
+
+    /**
+        The most worker threads a pipeline uses.
+    */
+    public static final int MAX_THREADS = 8;
+
+    private GraphicsConfiguration gc;
+    private ThreadPoolExecutor executor;
+    private ArrayList<Future<Image>> futures;
+    private long startTime;
+    private long totalTime;
+
+    // time spent on each asset by name, in nanoseconds
+    private Map<String, Long> assetTimes;
+
+    // the hash of each source file by name, and the cache of
+    // derived images
+    private Map<String, String> sourceHashes;
+    private ImageCache imageCache;
+
+    /**
+        Creates a new AssetPipeline with one worker thread per
+        core, up to MAX_THREADS. If the GraphicsConfiguration is
+        null, images are kept as plain BufferedImages so no
+        display is needed.
+    */
+    public AssetPipeline(GraphicsConfiguration gc) {
+        this(gc, Math.min(MAX_THREADS,
+            Runtime.getRuntime().availableProcessors()));
+    }
+
+
+    /**
+        Creates a new AssetPipeline with the specified number of
+        worker threads.
+    */
+    public AssetPipeline(GraphicsConfiguration gc, int numThreads) {
+        this.gc = gc;
+        futures = new ArrayList<Future<Image>>();
+        assetTimes = new LinkedHashMap<String, Long>();
+        sourceHashes = new HashMap<String, String>();
+        startTime = System.nanoTime();
+
+        // tasks are run in the order they were requested, which
+        // makes sure an image is always decoding before anything
+        // waiting for it runs
+        executor = new ThreadPoolExecutor(numThreads, numThreads,
+            0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+            new ThreadFactory() {
+                private int count;
+                public synchronized Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r,
+                        "AssetLoader-" + (++count));
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+    }
+
+
+    /**
+        Sets the cache of mirrored and flipped images. Set it
+        before requesting any images.
+    */
+    public void setImageCache(ImageCache imageCache) {
+        this.imageCache = imageCache;
+    }
+
+
+    /**
+        Gets the cache of mirrored and flipped images, or null if
+        there is none.
+    */
+    public ImageCache getImageCache() {
+        return imageCache;
+    }
+
+
+    /**
+        Requests an image from the images/ directory. The Future
+        gives null if the image can't be read.
+    */
+    public Future<Image> load(final String name) {
+        return submit(name, new Callable<Image>() {
+            public Image call() {
+                return loadImage(name);
+            }
+        });
+    }
+
+
+    /**
+        Requests a mirrored (left-right) copy of an image. The
+        Future must come from load() with the same name.
+    */
+    public Future<Image> mirror(String name, Future<Image> image) {
+        return transform(name, "mirror", image, -1, 1);
+    }
+
+
+    /**
+        Requests a flipped (upside down) copy of an image. The
+        Future must come from load() with the same name.
+    */
+    public Future<Image> flip(String name, Future<Image> image) {
+        return transform(name, "flip", image, 1, -1);
+    }
+
+
+    /**
+        Requests a mirrored and flipped copy of an image. The
+        Future must come from load() with the same name.
+    */
+    public Future<Image> mirrorFlip(String name,
+        Future<Image> image) {
+        return transform(name, "mirror-flip", image, -1, -1);
+    }
+
+
+    private Future<Image> transform(final String name,
+        final String transform, final Future<Image> image,
+        final float x, final float y)
+    {
+        return submit(name + " (" + transform + ")", new Callable<Image>() {
+            public Image call() throws Exception {
+                Image source = image.get();
+                String hash = getSourceHash(name);
+                if (imageCache != null && hash != null) {
+                    Image cached = imageCache.get(hash, transform, gc,
+                        Transparency.BITMASK);
+                    if (cached != null) {
+                        return cached;
+                    }
+                }
+
+                Image newImage = createScaledImage(gc, source, x, y);
+                if (imageCache != null && hash != null) {
+                    imageCache.put(hash, transform, newImage);
+                }
+                return newImage;
+            }
+        });
+    }
+
+
+    private Future<Image> submit(final String name,
+        final Callable<Image> task)
+    {
+        Future<Image> future = executor.submit(new Callable<Image>() {
+            public Image call() throws Exception {
+                long taskStart = System.nanoTime();
+                Image result = task.call();
+                setAssetTime(name, System.nanoTime() - taskStart);
+                return result;
+            }
+        });
+        futures.add(future);
+        return future;
+    }
+
+
+    /**
+        Waits for every requested image and shuts down the worker
+        threads. Throws a RuntimeException if any image failed.
+    */
+    public void join() {
+        try {
+            for (int i=0; i<futures.size(); i++) {
+                futures.get(i).get();
+            }
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted loading images");
+        }
+        catch (ExecutionException ex) {
+            throw new RuntimeException("Couldn't load images",
+                ex.getCause());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+        totalTime = System.nanoTime() - startTime;
+    }
+
+
+    /**
+        Gets a finished image. Only call this after join().
+    */
+    public Image getImage(Future<Image> future) {
+        try {
+            return future.get();
+        }
+        catch (Exception ex) {
+            throw new IllegalStateException("Image not loaded: " + ex);
+        }
+    }
+
+
+    /**
+        Gets the number of worker threads.
+    */
+    public int getThreadCount() {
+        return executor.getMaximumPoolSize();
+    }
+
+
+    /**
+        Gets the number of assets requested.
+    */
+    public int getAssetCount() {
+        return futures.size();
+    }
+
+
+    /**
+        Gets the time from creating this pipeline to the end of
+        join(), in nanoseconds.
+    */
+    public long getTotalTime() {
+        return totalTime;
+    }
+
+
+    /**
+        Gets the time a worker spent on an asset, in nanoseconds,
+        or -1 if there is no such asset.
+    */
+    public synchronized long getAssetTime(String name) {
+        Long time = assetTimes.get(name);
+        return (time == null) ? -1 : time.longValue();
+    }
+
+
+    private synchronized void setAssetTime(String name, long time) {
+        assetTimes.put(name, Long.valueOf(time));
+    }
+
+
+    private synchronized String getSourceHash(String name) {
+        return sourceHashes.get(name);
+    }
+
+
+    private synchronized void setSourceHash(String name, String hash) {
+        sourceHashes.put(name, hash);
+    }
+
+
+    /**
+        Prints the time spent on each asset and the total time.
+    */
+    public synchronized void printTimes(PrintStream out) {
+        Iterator<Map.Entry<String, Long>> i =
+            assetTimes.entrySet().iterator();
+        while (i.hasNext()) {
+            Map.Entry<String, Long> entry = i.next();
+            long time = entry.getValue().longValue();
+            out.println("  " + entry.getKey() + ": " +
+                (time / 1000) + " us");
+        }
+        out.println("  " + futures.size() + " assets on " +
+            getThreadCount() + " threads: " +
+            (totalTime / 1000) + " us");
+    }
+
+
+    /**
+        Reads an image from the images/ directory and copies it
+        into a display-compatible image. Returns null if the image
+        can't be read.
+    */
+    private Image loadImage(String name) {
+        BufferedImage image;
+        try {
+            byte[] bytes = readFile(MapLoader.findImageFile(name));
+            if (imageCache != null) {
+                setSourceHash(name, ImageCache.hash(bytes));
+            }
+            image = ImageIO.read(new ByteArrayInputStream(bytes));
+        }
+        catch (IOException ex) {
+            return null;
+        }
+        if (image == null || gc == null) {
+            return image;
+        }
+
+        Image newImage = gc.createCompatibleImage(image.getWidth(),
+            image.getHeight(), image.getTransparency());
+        Graphics2D g = (Graphics2D)newImage.getGraphics();
+        g.setComposite(AlphaComposite.Src);
+        g.drawImage(image, 0, 0, null);
+        g.dispose();
+        return newImage;
+    }
+
+
+    private static byte[] readFile(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(
+                (int)file.length());
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                bytes.write(buffer, 0, count);
+            }
+            return bytes.toByteArray();
+        }
+        finally {
+            in.close();
+        }
+    }
+
+
+    /**
+        Creates a scaled copy of an image, used to mirror and flip
+        images. The copy is transparent (not translucent).
+    */
+    static Image createScaledImage(GraphicsConfiguration gc,
+        Image image, float x, float y)
+    {
+        // set up the transform
+        AffineTransform transform = new AffineTransform();
+        transform.scale(x, y);
+        transform.translate(
+            (x-1) * image.getWidth(null) / 2,
+            (y-1) * image.getHeight(null) / 2);
+
+        // create a transparent (not translucent) image
+        Image newImage;
+        if (gc != null) {
+            newImage = gc.createCompatibleImage(
+                image.getWidth(null),
+                image.getHeight(null),
+                Transparency.BITMASK);
+        }
+        else {
+            newImage = new BufferedImage(
+                image.getWidth(null),
+                image.getHeight(null),
+                BufferedImage.TYPE_INT_ARGB);
+        }
+
+        // draw the transformed image
+        Graphics2D g = (Graphics2D)newImage.getGraphics();
+        g.drawImage(image, transform, null);
+        g.dispose();
+
+        return newImage;
+    }
+
+}
@@ -0,0 +1,348 @@
+package com.TETOSOFT.tilegame;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import com.TETOSOFT.tilegame.sprites.Creature;
+
+/**
+    The CreaturePhysics class moves a batch of Creatures in one
+    stage. The positions and velocities of the batch are copied
+    into parallel float arrays, gravity and movement are applied
+    to the whole batch in plain loops over those arrays (loops
+    the JIT can unroll and vectorise), tile collisions are found
+    for the whole batch with a TileSweep, and the results are
+    copied back.
+
+    <p>The results are exactly the same as moving each Creature
+    on its own: the same float operations are done in the same
+    order, each Creature moves along x before y, and
+    collideHorizontal() and collideVertical() are called on the
+    Creature when it hits a tile, so Creatures can still react in
+    their own way.
+
+    <p>Only Creatures that don't touch other Sprites while they
+    move should be added. The Player is moved on its own.
+
+    <p>With a ForkJoinPool set, a big batch is split into bands of
+    Creatures that are moved in parallel. The batch is filled from
+    the sprite grid a column at a time, so each band is a band of
+    columns of the map. Each Creature is moved the same way whatever
+    band it is in, so the results are the same as moving the batch
+    on one thread. collideHorizontal() and collideVertical() are
+    then called from the pool's threads, so they must only change
+    the Creature itself. Each band counts its own sweeps when
+    sampling them for the Flight Recorder.
+*/
+public class CreaturePhysics {
+
+    // flags
+    private static final int FLYING = 1;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    // the fewest Creatures worth moving on another thread
+    private static final int MIN_BAND_SIZE = 512;
+
+    // bands per thread of the pool, so busy bands can be balanced
+    private static final int BANDS_PER_THREAD = 4;
+
+    private Creature[] creatures;
+    private float[] x;
+    private float[] y;
+    private float[] dx;
+    private float[] dy;
+    private float[] next;
+    private int[] width;
+    private int[] height;
+    private int[] flags;
+    private int size;
+
+    private TileSweep tileSweep = new TileSweep();
+
+    // the state of the current update, read by the bands
+    private TileMap map;
+    private float gravity;
+    private float time;
+
+    private ForkJoinPool pool;
+    private Band[] bands = new Band[0];
+    private int numBands;
+
+    // the tasks are never serialized
+    @SuppressWarnings("serial")
+    private RecursiveAction moveBands = new RecursiveAction() {
+        protected void compute() {
+            ForkJoinTask.invokeAll(bands);
+        }
+    };
+
+    /**
+        Creates a new, empty CreaturePhysics.
+    */
+    public CreaturePhysics() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+
+    /**
+        Removes every Creature from the batch. The arrays are kept,
+        so a batch of the same size never allocates.
+    */
+    public void clear() {
+        for (int i=0; i<size; i++) {
+            creatures[i] = null;
+        }
+        size = 0;
+    }
+
+
+    /**
+        Adds a Creature to the batch, copying its position,
+        velocity, size, and whether it is flying.
+    */
+    public void add(Creature creature) {
+        if (size == creatures.length) {
+            grow(size * 2);
+        }
+        creatures[size] = creature;
+        x[size] = creature.getX();
+        y[size] = creature.getY();
+        dx[size] = creature.getVelocityX();
+        dy[size] = creature.getVelocityY();
+        width[size] = creature.getWidth();
+        height[size] = creature.getHeight();
+        flags[size] = creature.isFlying() ? FLYING : 0;
+        size++;
+    }
+
+
+    /**
+        Gets the number of Creatures in the batch.
+    */
+    public int size() {
+        return size;
+    }
+
+
+    /**
+        Moves every Creature in the batch: applies gravity to the
+        ones that aren't flying, moves them, stops them at solid
+        tiles of the map, and copies the results back to the
+        Creatures.
+    */
+    public void update(TileMap map, long elapsedTime) {
+        this.map = map;
+        gravity = GameEngine.GRAVITY * elapsedTime;
+        time = elapsedTime;
+
+        int bandCount = 1;
+        if (pool != null) {
+            bandCount = Math.min(size / MIN_BAND_SIZE,
+                pool.getParallelism() * BANDS_PER_THREAD);
+        }
+        if (bandCount <= 1) {
+            numBands = 0;
+            move(0, size, tileSweep);
+        }
+        else {
+            // split the batch into bands of about the same size
+            setBandCount(bandCount);
+            for (int i=0; i<bandCount; i++) {
+                bands[i].reinitialize();
+                bands[i].from = (int)((long)size * i / bandCount);
+                bands[i].to = (int)((long)size * (i + 1) / bandCount);
+            }
+            moveBands.reinitialize();
+            pool.invoke(moveBands);
+        }
+        this.map = null;
+    }
+
+
+    /**
+        Sets the ForkJoinPool used to move big batches in parallel,
+        or null to always move the batch on the calling thread.
+    */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+
+    /**
+        Gets the ForkJoinPool used to move big batches, or null if
+        batches are moved on the calling thread.
+    */
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+
+    /**
+        Gets the number of bands the last update was split into,
+        or 0 if it ran on the calling thread.
+    */
+    public int getBandCount() {
+        return numBands;
+    }
+
+
+    // moves the Creatures from index "from" up to "to", using the
+    // specified TileSweep to find tile collisions
+    private void move(int from, int to, TileSweep sweep) {
+
+        // apply gravity. Adding -0 leaves any value, even -0, as it
+        // is, so flying creatures go through the same loop
+        for (int i=from; i<to; i++) {
+            dy[i] += ((flags[i] & FLYING) == 0) ? gravity : -0.0f;
+        }
+
+        // change x
+        for (int i=from; i<to; i++) {
+            next[i] = x[i] + dx[i] * time;
+        }
+        for (int i=from; i<to; i++) {
+            if (!sweep.sampleSweep(map, x[i], y[i], next[i], y[i],
+                width[i], height[i], creatures[i]))
+            {
+                x[i] = next[i];
+            }
+            else {
+                // line up with the side of the tile that was hit
+                if (sweep.getNormalX() < 0) {
+                    x[i] = TileMapDrawer.tilesToPixels(
+                        sweep.getTile().x) - width[i];
+                }
+                else {
+                    x[i] = TileMapDrawer.tilesToPixels(
+                        sweep.getTile().x + 1);
+                }
+                store(i);
+                creatures[i].collideHorizontal();
+                load(i);
+            }
+        }
+
+        // change y
+        for (int i=from; i<to; i++) {
+            next[i] = y[i] + dy[i] * time;
+        }
+        for (int i=from; i<to; i++) {
+            if (!sweep.sampleSweep(map, x[i], y[i], x[i], next[i],
+                width[i], height[i], creatures[i]))
+            {
+                y[i] = next[i];
+            }
+            else {
+                // line up with the side of the tile that was hit
+                if (sweep.getNormalY() < 0) {
+                    y[i] = TileMapDrawer.tilesToPixels(
+                        sweep.getTile().y) - height[i];
+                }
+                else {
+                    y[i] = TileMapDrawer.tilesToPixels(
+                        sweep.getTile().y + 1);
+                }
+                store(i);
+                creatures[i].collideVertical();
+                load(i);
+            }
+        }
+
+        for (int i=from; i<to; i++) {
+            store(i);
+        }
+    }
+
+
+    // makes sure there are at least the specified number of bands,
+    // keeping the ones already made
+    private void setBandCount(int count) {
+        if (count > bands.length) {
+            Band[] newBands = new Band[count];
+            System.arraycopy(bands, 0, newBands, 0, bands.length);
+            for (int i=bands.length; i<count; i++) {
+                newBands[i] = new Band();
+            }
+            bands = newBands;
+        }
+        // invokeAll() runs the whole array, so unused bands are empty
+        for (int i=count; i<bands.length; i++) {
+            bands[i].reinitialize();
+            bands[i].from = 0;
+            bands[i].to = 0;
+        }
+        numBands = count;
+    }
+
+
+    // copies a Creature's state from the arrays to the Creature
+    private void store(int i) {
+        Creature creature = creatures[i];
+        creature.setX(x[i]);
+        creature.setY(y[i]);
+        creature.setVelocityX(dx[i]);
+        creature.setVelocityY(dy[i]);
+    }
+
+
+    // copies a Creature's state back after it reacted to a collision
+    private void load(int i) {
+        Creature creature = creatures[i];
+        x[i] = creature.getX();
+        y[i] = creature.getY();
+        dx[i] = creature.getVelocityX();
+        dy[i] = creature.getVelocityY();
+    }
+
+
+    private void allocate(int capacity) {
+        creatures = new Creature[capacity];
+        x = new float[capacity];
+        y = new float[capacity];
+        dx = new float[capacity];
+        dy = new float[capacity];
+        next = new float[capacity];
+        width = new int[capacity];
+        height = new int[capacity];
+        flags = new int[capacity];
+    }
+
+
+    private void grow(int capacity) {
+        Creature[] oldCreatures = creatures;
+        float[] oldX = x;
+        float[] oldY = y;
+        float[] oldDx = dx;
+        float[] oldDy = dy;
+        int[] oldWidth = width;
+        int[] oldHeight = height;
+        int[] oldFlags = flags;
+        allocate(capacity);
+        System.arraycopy(oldCreatures, 0, creatures, 0, size);
+        System.arraycopy(oldX, 0, x, 0, size);
+        System.arraycopy(oldY, 0, y, 0, size);
+        System.arraycopy(oldDx, 0, dx, 0, size);
+        System.arraycopy(oldDy, 0, dy, 0, size);
+        System.arraycopy(oldWidth, 0, width, 0, size);
+        System.arraycopy(oldHeight, 0, height, 0, size);
+        System.arraycopy(oldFlags, 0, flags, 0, size);
+    }
+
+
+    /**
+        A band of the batch, moved by one task of the pool.
+    */
+    @SuppressWarnings("serial")
+    private class Band extends RecursiveAction {
+        int from;
+        int to;
+        TileSweep sweep = new TileSweep();
+
+        protected void compute() {
+            move(from, to, sweep);
+        }
+    }
+
+}
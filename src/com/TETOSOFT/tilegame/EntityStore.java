@@ -0,0 +1,228 @@
+package com.TETOSOFT.tilegame;
+
+import com.TETOSOFT.graphics.Sprite;
+
+/**
+    The EntityStore class holds the Sprites of a map in a dense
+    array, so they can be walked with a plain indexed loop.
+
+    <p>Each Sprite gets a handle when it is added. A handle stays
+    the same while the Sprite is in the store, even though the
+    Sprite's index changes as others are removed, and a handle of
+    a removed Sprite never finds a later Sprite. The Sprite keeps
+    its own handle, so removing it is O(1): the last Sprite is
+    moved into its place.
+
+    <p>Removal is deferred. remove() only marks a Sprite, which
+    stays in the array (so a loop over the Sprites isn't disturbed)
+    until applyRemovals() is called, normally at the end of a tick.
+*/
+public class EntityStore {
+
+    // a handle is an id in the low bits and a generation count
+    // in the high bits, so a reused id gets a new handle
+    private static final int ID_BITS = 20;
+    private static final int ID_MASK = (1 << ID_BITS) - 1;
+    private static final int GENERATION_MASK = -1 >>> ID_BITS;
+
+    /**
+        The most Sprites a store can hold. The last id is left
+        unused so no handle equals Sprite.NO_HANDLE.
+    */
+    public static final int MAX_SPRITES = ID_MASK;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    // the Sprites, densely packed
+    private Sprite[] sprites;
+    private int size;
+
+    // by id: the index of the Sprite, its generation, and whether
+    // it is waiting to be removed
+    private int[] indexes;
+    private int[] generations;
+    private boolean[] removing;
+
+    // ids that are free to reuse
+    private int[] freeIds;
+    private int numFreeIds;
+    private int numIds;
+
+    // handles waiting to be removed
+    private int[] pendingRemovals;
+    private int numPendingRemovals;
+
+    /**
+        Creates a new, empty EntityStore.
+    */
+    public EntityStore() {
+        sprites = new Sprite[INITIAL_CAPACITY];
+        indexes = new int[INITIAL_CAPACITY];
+        generations = new int[INITIAL_CAPACITY];
+        removing = new boolean[INITIAL_CAPACITY];
+        freeIds = new int[INITIAL_CAPACITY];
+        pendingRemovals = new int[INITIAL_CAPACITY];
+    }
+
+
+    /**
+        Adds a Sprite and gives it a handle. A Sprite can only be
+        in one store at a time.
+    */
+    public int add(Sprite sprite) {
+        if (sprite.getHandle() != Sprite.NO_HANDLE) {
+            throw new IllegalArgumentException(
+                "Sprite is already in a store");
+        }
+
+        int id;
+        if (numFreeIds > 0) {
+            id = freeIds[--numFreeIds];
+        }
+        else {
+            if (numIds == MAX_SPRITES) {
+                throw new IllegalStateException("Entity store is full");
+            }
+            id = numIds++;
+            if (id == indexes.length) {
+                int capacity = Math.min(id * 2, MAX_SPRITES);
+                indexes = grow(indexes, capacity);
+                generations = grow(generations, capacity);
+                boolean[] newRemoving = new boolean[capacity];
+                System.arraycopy(removing, 0, newRemoving, 0, id);
+                removing = newRemoving;
+            }
+        }
+
+        if (size == sprites.length) {
+            Sprite[] newSprites = new Sprite[size * 2];
+            System.arraycopy(sprites, 0, newSprites, 0, size);
+            sprites = newSprites;
+        }
+        sprites[size] = sprite;
+        indexes[id] = size;
+        size++;
+
+        int handle = (generations[id] << ID_BITS) | id;
+        sprite.setHandle(handle);
+        return handle;
+    }
+
+
+    /**
+        Marks a Sprite to be removed by the next call to
+        applyRemovals(). Does nothing if the Sprite isn't in this
+        store or is already marked.
+    */
+    public void remove(Sprite sprite) {
+        int handle = sprite.getHandle();
+        if (get(handle) != sprite || removing[handle & ID_MASK]) {
+            return;
+        }
+        removing[handle & ID_MASK] = true;
+        if (numPendingRemovals == pendingRemovals.length) {
+            pendingRemovals = grow(pendingRemovals,
+                numPendingRemovals * 2);
+        }
+        pendingRemovals[numPendingRemovals++] = handle;
+    }
+
+
+    /**
+        Removes every Sprite marked by remove(), moving the last
+        Sprite into the place of each one.
+    */
+    public void applyRemovals() {
+        for (int i=0; i<numPendingRemovals; i++) {
+            int id = pendingRemovals[i] & ID_MASK;
+            int index = indexes[id];
+            Sprite sprite = sprites[index];
+
+            // move the last Sprite into the gap
+            int last = size - 1;
+            Sprite lastSprite = sprites[last];
+            sprites[index] = lastSprite;
+            indexes[lastSprite.getHandle() & ID_MASK] = index;
+            sprites[last] = null;
+            size = last;
+
+            // retire the handle
+            removing[id] = false;
+            generations[id] = (generations[id] + 1) & GENERATION_MASK;
+            if (numFreeIds == freeIds.length) {
+                freeIds = grow(freeIds, numFreeIds * 2);
+            }
+            freeIds[numFreeIds++] = id;
+            sprite.setHandle(Sprite.NO_HANDLE);
+        }
+        numPendingRemovals = 0;
+    }
+
+
+    /**
+        Checks if a handle belongs to a Sprite in this store.
+        Sprites marked for removal are still in the store.
+    */
+    public boolean isValid(int handle) {
+        int id = handle & ID_MASK;
+        return (handle != Sprite.NO_HANDLE && id < numIds &&
+            generations[id] == (handle >>> ID_BITS) &&
+            indexes[id] < size &&
+            sprites[indexes[id]].getHandle() == handle);
+    }
+
+
+    /**
+        Checks if a Sprite is marked to be removed.
+    */
+    public boolean isRemoving(Sprite sprite) {
+        int handle = sprite.getHandle();
+        return get(handle) == sprite && removing[handle & ID_MASK];
+    }
+
+
+    /**
+        Gets the Sprite with the specified handle, or null if the
+        handle isn't valid.
+    */
+    public Sprite get(int handle) {
+        return isValid(handle) ? sprites[indexes[handle & ID_MASK]] : null;
+    }
+
+
+    /**
+        Gets the number of Sprites in the store, including the ones
+        marked for removal.
+    */
+    public int size() {
+        return size;
+    }
+
+
+    /**
+        Gets the Sprite at the specified index, from 0 to size() - 1.
+        Indexes change when Sprites are removed; use handles to refer
+        to a Sprite across ticks.
+    */
+    public Sprite getSprite(int index) {
+        return sprites[index];
+    }
+
+
+    /**
+        Gets the id part of a handle, from 0 up to the largest
+        number of Sprites the store has held. Ids can be used to
+        index arrays that hold data for each Sprite.
+    */
+    public static int getId(int handle) {
+        return handle & ID_MASK;
+    }
+
+
+    private static int[] grow(int[] array, int capacity) {
+        int[] newArray = new int[capacity];
+        System.arraycopy(array, 0, newArray, 0, array.length);
+        return newArray;
+    }
+
+}
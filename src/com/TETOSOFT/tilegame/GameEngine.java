@@ -2,10 +2,18 @@ package com.TETOSOFT.tilegame;
 
 import java.awt.*;
 import java.awt.event.KeyEvent;
-import java.util.Iterator;
+import java.io.*;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 import com.TETOSOFT.graphics.*;
 import com.TETOSOFT.input.*;
+import com.TETOSOFT.test.FrameStats;
+import com.TETOSOFT.test.GameEvents;
 import com.TETOSOFT.test.GameCore;
 import com.TETOSOFT.tilegame.sprites.*;
 
@@ -15,25 +23,91 @@ import com.TETOSOFT.tilegame.sprites.*;
 public class GameEngine extends GameCore 
 {
     
-    public static void main(String[] args) 
+    public static void main(String[] args) throws IOException
     {
-        new GameEngine().run();
+        GameEngine engine = new GameEngine();
+        for (int i=0; i<args.length; i++) {
+            if (args[i].equals("-parallel")) {
+                engine.setUpdatePool(ForkJoinPool.commonPool());
+            }
+            else if (args[i].equals("-record") && i + 1 < args.length) {
+                engine.setInputRecording(
+                    new FileOutputStream(args[++i]));
+            }
+            else if (args[i].equals("-replay") && i + 1 < args.length) {
+                engine.setInputReplay(
+                    new InputReplay(new FileInputStream(args[++i])));
+            }
+        }
+        engine.run();
     }
     
     public static final float GRAVITY = 0.002f;
     
-    private Point pointCache = new Point();
+    /**
+     * Default number of tiles beyond each side of the screen in
+     * which sprites are still updated.
+     */
+    public static final int DEFAULT_ACTIVATION_MARGIN = 8;
+    
+    // screen size assumed when running headless
+    private static final int HEADLESS_VIEW_WIDTH = 800;
+    private static final int HEADLESS_VIEW_HEIGHT = 600;
+    
+    // the actions recorded by an InputRecorder, in bit order
+    private static final String[] RECORDED_ACTIONS = {
+        "moveLeft", "moveRight", "jump"
+    };
+    private static final int INPUT_LEFT = 1;
+    private static final int INPUT_RIGHT = 2;
+    private static final int INPUT_JUMP = 4;
+    
+    // one in this many sprite collision checks is recorded as an
+    // event, like tile sweeps
+    private static final int COLLISION_SAMPLE_INTERVAL =
+        TileSweep.SAMPLE_INTERVAL;
+    
+    // how often the frame statistics overlay is refreshed
+    private static final long STATS_REFRESH_NANOS = 500000000L;
+    private static final Color STATS_BACKGROUND = new Color(0, 0, 0, 160);
+    
+    private TileSweep tileSweep = new TileSweep();
+    private ArrayList<Sprite> nearbySprites = new ArrayList<Sprite>();
+    private ArrayList<Sprite> activeSprites = new ArrayList<Sprite>();
+    private int spriteCollisionCount;
+    private CreaturePhysics physics = new CreaturePhysics();
+    private int viewWidth = HEADLESS_VIEW_WIDTH;
+    private int viewHeight = HEADLESS_VIEW_HEIGHT;
+    private int activationMargin = DEFAULT_ACTIVATION_MARGIN;
     private TileMap map;
     private MapLoader mapLoader;
     private InputManager inputManager;
+    private int droppedInputEvents;
     private TileMapDrawer drawer;
     
     private GameAction moveLeft;
     private GameAction moveRight;
     private GameAction jump;
     private GameAction exit;
+    private GameAction showStats;
+    private GameAction dumpStats;
     private int collectedStars=0;
     private int numLives=6;
+    
+    private Hud hud;
+    private int starsField;
+    private int livesField;
+    private int mapField;
+    
+    private OutputStream inputRecording;
+    private InputRecorder inputRecorder;
+    private InputReplay inputReplay;
+    private boolean replayTickRead;
+    
+    private boolean statsVisible;
+    private List<String> statsLines;
+    private long statsRefreshTime;
+    private Font statsFont = new Font("Monospaced", Font.PLAIN, 12);
    
     public void init()
     {
@@ -42,15 +116,63 @@ public class GameEngine extends GameCore
         // set up input manager
         initInput();
         
+        // load the game for the full screen window
+        viewWidth = screen.getWidth();
+        viewHeight = screen.getHeight();
+        initGame(screen.getFullScreenWindow().getGraphicsConfiguration());
+    }
+    
+    
+    /**
+     * Sets up the game without a screen or input devices. Images
+     * are loaded into plain BufferedImages and the game actions are
+     * never pressed.
+     */
+    public void initHeadless()
+    {
+        super.initHeadless();
+        
+        createGameActions();
+        initGame(null);
+    }
+    
+    
+    /**
+     * Loads the resources and the first map. A null
+     * GraphicsConfiguration loads images for headless use.
+     */
+    private void initGame(GraphicsConfiguration gc)
+    {
+        // play the game the replay was recorded with, and start
+        // recording once the view is known
+        if (inputReplay != null) {
+            viewWidth = inputReplay.getViewWidth();
+            viewHeight = inputReplay.getViewHeight();
+            activationMargin = inputReplay.getActivationMargin();
+            replayTickRead = nextReplayTick();
+        }
+        if (inputRecording != null) {
+            try {
+                inputRecorder = new InputRecorder(inputRecording,
+                    viewWidth, viewHeight, activationMargin,
+                    RECORDED_ACTIONS);
+            }
+            catch (IOException ex) {
+                System.out.println("Couldn't record input: " + ex);
+            }
+            inputRecording = null;
+        }
+        
         // start resource manager
-        mapLoader = new MapLoader(screen.getFullScreenWindow().getGraphicsConfiguration());
+        mapLoader = new MapLoader(gc);
         
         // load resources
         drawer = new TileMapDrawer();
         drawer.setBackground(mapLoader.loadImage("background.jpg"));
+        createHud(gc);
         
         // load first map
-        map = mapLoader.loadNextMap();
+        setMap(mapLoader.loadNextMap());
     }
     
     
@@ -63,11 +185,82 @@ public class GameEngine extends GameCore
     }
     
     
-    private void initInput() {
+    /**
+     * Runs the game loop, then closes the input recording and
+     * replay.
+     */
+    public void gameLoop() {
+        try {
+            super.gameLoop();
+        }
+        finally {
+            closeInputRecording();
+        }
+    }
+    
+    
+    /**
+     * Records the input of each tick to the specified stream, from
+     * when the game is initiated. See InputRecorder.
+     */
+    public void setInputRecording(OutputStream out) {
+        inputRecording = out;
+    }
+    
+    
+    /**
+     * Plays the game from a recording instead of from the input
+     * devices: each tick takes its elapsed time and input from the
+     * replay, whatever time the caller of update() passes, and the
+     * game stops at the end of the replay. The view size and
+     * activation margin are taken from the recording when the game
+     * is initiated, so the game does exactly the same work as when
+     * it was recorded, with a screen or headless.
+     */
+    public void setInputReplay(InputReplay replay) {
+        if (!Arrays.equals(replay.getActionNames(),
+                RECORDED_ACTIONS)) {
+            throw new IllegalArgumentException(
+                "The recording has different actions");
+        }
+        inputReplay = replay;
+    }
+    
+    
+    /**
+     * Closes the input recording and replay, if any.
+     */
+    public void closeInputRecording() {
+        try {
+            if (inputRecorder != null) {
+                inputRecorder.close();
+            }
+            if (inputReplay != null) {
+                inputReplay.close();
+            }
+        }
+        catch (IOException ex) {
+            System.out.println("Couldn't close input recording: " + ex);
+        }
+        inputRecorder = null;
+        inputReplay = null;
+    }
+    
+    
+    private void createGameActions() {
         moveLeft = new GameAction("moveLeft");
         moveRight = new GameAction("moveRight");
         jump = new GameAction("jump", GameAction.DETECT_INITAL_PRESS_ONLY);
         exit = new GameAction("exit",GameAction.DETECT_INITAL_PRESS_ONLY);
+        showStats = new GameAction("showStats",
+            GameAction.DETECT_INITAL_PRESS_ONLY);
+        dumpStats = new GameAction("dumpStats",
+            GameAction.DETECT_INITAL_PRESS_ONLY);
+    }
+    
+    
+    private void initInput() {
+        createGameActions();
         
         inputManager = new InputManager(screen.getFullScreenWindow());
         inputManager.setCursor(InputManager.INVISIBLE_CURSOR);
@@ -76,48 +269,167 @@ public class GameEngine extends GameCore
         inputManager.mapToKey(moveRight, KeyEvent.VK_RIGHT);
         inputManager.mapToKey(jump, KeyEvent.VK_SPACE);
         inputManager.mapToKey(exit, KeyEvent.VK_ESCAPE);
+        inputManager.mapToKey(showStats, KeyEvent.VK_F3);
+        inputManager.mapToKey(dumpStats, KeyEvent.VK_F4);
     }
     
     
-    private void checkInput(long elapsedTime) 
+    /**
+     * Applies the input events and handles the actions that don't
+     * change the game. Returns the INPUT bits of the actions that
+     * do, which are read every tick so they can be recorded.
+     */
+    private int checkInput() 
     {
+        long inputStart = System.nanoTime();
+        
+        // apply the input events since the last tick (there are no
+        // input devices when headless), and tag them so the time
+        // until their result is on screen can be measured
+        if (inputManager != null) {
+            inputManager.processEvents();
+            for (int i=0; i<inputManager.getProcessedEventCount(); i++) {
+                getInputLatency().addInput(
+                    inputManager.getProcessedEventTime(i),
+                    inputManager.getProcessedEventWhen(i));
+            }
+            
+            // the input queue only fills up if the game stalls
+            int dropped = inputManager.getDroppedEventCount();
+            if (dropped != droppedInputEvents) {
+                System.out.println("Input queue full, dropped " +
+                    (dropped - droppedInputEvents) + " input events");
+                droppedInputEvents = dropped;
+            }
+        }
         
         if (exit.isPressed()) {
             stop();
         }
+        if (showStats.isPressed()) {
+            statsVisible = !statsVisible;
+            statsLines = null;
+        }
+        if (dumpStats.isPressed()) {
+            dumpFrameStats();
+        }
+        
+        int input = 0;
+        if (moveLeft.isPressed()) {
+            input |= INPUT_LEFT;
+        }
+        if (moveRight.isPressed()) {
+            input |= INPUT_RIGHT;
+        }
+        if (jump.isPressed()) {
+            input |= INPUT_JUMP;
+        }
         
+        getFrameStats().add(FrameStats.INPUT,
+            System.nanoTime() - inputStart);
+        return input;
+    }
+    
+    
+    /**
+     * Moves the player by the INPUT bits of a tick.
+     */
+    private void applyInput(int input) {
         Player player = (Player)map.getPlayer();
         if (player.isAlive()) 
         {
             float velocityX = 0;
-            if (moveLeft.isPressed()) 
+            if ((input & INPUT_LEFT) != 0) 
             {
                 velocityX-=player.getMaxSpeed();
             }
-            if (moveRight.isPressed()) {
+            if ((input & INPUT_RIGHT) != 0) {
                 velocityX+=player.getMaxSpeed();
             }
-            if (jump.isPressed()) {
+            if ((input & INPUT_JUMP) != 0) {
                 player.jump(false);
             }
             player.setVelocityX(velocityX);
         }
-        
     }
     
     
     public void draw(Graphics2D g) {
         
-        drawer.draw(g, map, screen.getWidth(), screen.getHeight());
-        g.setColor(Color.WHITE);
-        g.drawString("Press ESC for EXIT.",10.0f,20.0f);
-        g.setColor(Color.GREEN);
-        g.drawString("Coins: "+collectedStars,300.0f,20.0f);
-        g.setColor(Color.YELLOW);
-        g.drawString("Lives: "+(numLives),500.0f,20.0f );
-        g.setColor(Color.WHITE);
-        g.drawString("Home: "+mapLoader.currentMap,700.0f,20.0f);
+        drawer.draw(g, map, viewWidth, viewHeight, getInterpolation());
+        
+        // the HUD only re-renders the fields that changed
+        hud.setValue(starsField, collectedStars);
+        hud.setValue(livesField, numLives);
+        hud.setValue(mapField, mapLoader.currentMap);
+        hud.draw(g);
         
+        if (statsVisible) {
+            drawFrameStats(g);
+        }
+    }
+    
+    
+    /**
+     * Draws the frame statistics and the number of dropped input
+     * events over the game. The text is only rebuilt twice a
+     * second, so the overlay is readable and costs little.
+     */
+    private void drawFrameStats(Graphics2D g) {
+        long now = System.nanoTime();
+        if (statsLines == null || now - statsRefreshTime >=
+            STATS_REFRESH_NANOS)
+        {
+            statsLines = getFrameStats().getReport();
+            statsLines.add("input events dropped: " + droppedInputEvents);
+            statsRefreshTime = now;
+        }
+        
+        g.setFont(statsFont);
+        FontMetrics metrics = g.getFontMetrics();
+        int lineHeight = metrics.getHeight();
+        int x = 10;
+        int y = 40;
+        g.setColor(STATS_BACKGROUND);
+        g.fillRect(x - 5, y, viewWidth - 2 * x + 10,
+            statsLines.size() * lineHeight + 10);
+        g.setColor(Color.WHITE);
+        for (int i=0; i<statsLines.size(); i++) {
+            y += lineHeight;
+            g.drawString(statsLines.get(i), x, y);
+        }
+    }
+    
+    
+    /**
+     * Writes the frame statistics to a file named after the
+     * current time, in the working directory.
+     */
+    private void dumpFrameStats() {
+        String name = "frame-stats-" +
+            new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) +
+            ".txt";
+        File file = new File(name);
+        try {
+            getFrameStats().writeReport(file);
+            System.out.println("Frame stats written to " +
+                file.getAbsolutePath());
+        }
+        catch (IOException ex) {
+            System.out.println("Couldn't write frame stats: " + ex);
+        }
+    }
+    
+    
+    /**
+     * Sets up the HUD labels and numbers.
+     */
+    private void createHud(GraphicsConfiguration gc) {
+        hud = new Hud(createFont(), gc);
+        hud.addLabel("Press ESC for EXIT.", Color.WHITE, 10, 20);
+        starsField = hud.addField("Coins: ", Color.GREEN, 300, 20);
+        livesField = hud.addField("Lives: ", Color.YELLOW, 500, 20);
+        mapField = hud.addField("Home: ", Color.WHITE, 700, 20);
     }
     
     
@@ -128,39 +440,81 @@ public class GameEngine extends GameCore
         return map;
     }
     
+    
+    /**
+     * Gets the MapLoader used to load the maps.
+     */
+    public MapLoader getMapLoader() {
+        return mapLoader;
+    }
+    
+    
     /**
-     * Gets the tile that a Sprites collides with. Only the
-     * Sprite's X or Y should be changed, not both. Returns null
-     * if no collision is detected.
+     * Sets how many tiles beyond each side of the screen sprites
+     * are still updated. Sprites farther away are neither updated
+     * nor drawn until the player comes near.
+     */
+    public void setActivationMargin(int tiles) {
+        activationMargin = Math.max(0, tiles);
+    }
+    
+    
+    /**
+     * Sets the ForkJoinPool used to move the creatures of big maps
+     * on several cores, or null to move them all on the game
+     * thread. The creatures are split into bands of columns that
+     * are moved in parallel; everything else in a tick, including
+     * the player, the sprite grid and removals, stays on the game
+     * thread in the same order, so the game plays exactly the same.
+     */
+    public void setUpdatePool(ForkJoinPool pool) {
+        physics.setPool(pool);
+    }
+    
+    
+    /**
+     * Gets the ForkJoinPool used to move creatures, or null.
+     */
+    public ForkJoinPool getUpdatePool() {
+        return physics.getPool();
+    }
+    
+    
+    /**
+     * Makes the specified map the current map. Its Sprites start
+     * out with no motion to interpolate.
+     */
+    public void setMap(TileMap newMap) {
+        map = newMap;
+        savePositions();
+    }
+    
+    
+    /**
+     * Saves the position of the player and every Sprite in the
+     * current map as the previous tick's state for interpolation.
+     */
+    private void savePositions() {
+        map.getPlayer().savePosition();
+        EntityStore sprites = map.getEntityStore();
+        for (int i=0; i<sprites.size(); i++) {
+            sprites.getSprite(i).savePosition();
+        }
+    }
+    
+    /**
+     * Gets the tile that a Sprites collides with when it moves to
+     * (newX, newY): the first solid tile along the move, however
+     * long it is. Only the Sprite's X or Y should be changed, not
+     * both. Returns null if no collision is detected.
      */
     public Point getTileCollision(Sprite sprite, float newX, float newY) 
     {
-        float fromX = Math.min(sprite.getX(), newX);
-        float fromY = Math.min(sprite.getY(), newY);
-        float toX = Math.max(sprite.getX(), newX);
-        float toY = Math.max(sprite.getY(), newY);
-        
-        // get the tile locations
-        int fromTileX = TileMapDrawer.pixelsToTiles(fromX);
-        int fromTileY = TileMapDrawer.pixelsToTiles(fromY);
-        int toTileX = TileMapDrawer.pixelsToTiles(
-                toX + sprite.getWidth() - 1);
-        int toTileY = TileMapDrawer.pixelsToTiles(
-                toY + sprite.getHeight() - 1);
-        
-        // check each tile for a collision
-        for (int x=fromTileX; x<=toTileX; x++) {
-            for (int y=fromTileY; y<=toTileY; y++) {
-                if (x < 0 || x >= map.getWidth() ||
-                        map.getTile(x, y) != null) {
-                    // collision found, return the tile
-                    pointCache.setLocation(x, y);
-                    return pointCache;
-                }
-            }
+        if (tileSweep.sampleSweep(map, sprite.getX(), sprite.getY(),
+                newX, newY, sprite.getWidth(), sprite.getHeight(),
+                sprite)) {
+            return tileSweep.getTile();
         }
-        
-        // no collision found
         return null;
     }
     
@@ -203,11 +557,41 @@ public class GameEngine extends GameCore
      * or null if no Sprite collides with the specified Sprite.
      */
     public Sprite getSpriteCollision(Sprite sprite) {
+        if (GameEvents.isRecording() &&
+                ++spriteCollisionCount % COLLISION_SAMPLE_INTERVAL == 0) {
+            return sampleSpriteCollision(sprite);
+        }
+        return findSpriteCollision(sprite);
+    }
+    
+    
+    /**
+     * Gets the sprite collision as getSpriteCollision() does,
+     * recording the check as a SpriteCollision event.
+     */
+    private Sprite sampleSpriteCollision(Sprite sprite) {
+        GameEvents.SpriteCollision event =
+            new GameEvents.SpriteCollision();
+        event.begin();
+        Sprite collisionSprite = findSpriteCollision(sprite);
+        event.end();
+        if (event.shouldCommit()) {
+            event.sampleInterval = COLLISION_SAMPLE_INTERVAL;
+            event.sprite = sprite.getClass().getName();
+            event.candidates = nearbySprites.size();
+            event.hit = (collisionSprite != null);
+            event.commit();
+        }
+        return collisionSprite;
+    }
+    
+    
+    private Sprite findSpriteCollision(Sprite sprite) {
         
-        // run through the list of Sprites
-        Iterator i = map.getSprites();
-        while (i.hasNext()) {
-            Sprite otherSprite = (Sprite)i.next();
+        // run through the Sprites in the nearby grid cells
+        map.getSpriteGrid().getNearbySprites(sprite, nearbySprites);
+        for (int i=0; i<nearbySprites.size(); i++) {
+            Sprite otherSprite = nearbySprites.get(i);
             if (isCollision(sprite, otherSprite)) {
                 // collision found, return the Sprite
                 return otherSprite;
@@ -224,40 +608,169 @@ public class GameEngine extends GameCore
      * in the current map.
      */
     public void update(long elapsedTime) {
+        GameEvents.Tick event = null;
+        if (GameEvents.isRecording()) {
+            event = new GameEvents.Tick();
+            event.begin();
+        }
+        
+        // get keyboard/mouse input, or the input of the replay
+        int input = checkInput();
+        if (inputReplay != null) {
+            if (!replayTickRead) {
+                stop();
+                endTick(event, elapsedTime, 0);
+                return;
+            }
+            elapsedTime = inputReplay.getElapsedTime();
+            input = inputReplay.getActionBits();
+            
+            // read ahead, to stop the game after the last tick
+            replayTickRead = nextReplayTick();
+            if (!replayTickRead) {
+                stop();
+            }
+        }
+        recordTick(elapsedTime, input);
+        
         Creature player = (Creature)map.getPlayer();
         
         
         // player is dead! start map over
         if (player.getState() == Creature.STATE_DEAD) {
-            map = mapLoader.reloadMap();
+            setMap(mapLoader.reloadMap());
+            endTick(event, elapsedTime, 0);
             return;
         }
         
-        // get keyboard/mouse input
-        checkInput(elapsedTime);
+        // remember where the player was before this tick
+        player.savePosition();
+        map.getSpriteGrid().resetCounters();
+
+        // move the player by the input
+        applyInput(input);
         
         // update player
         updateCreature(player, elapsedTime);
         player.update(elapsedTime);
         
-        // update other sprites
-        Iterator i = map.getSprites();
-        while (i.hasNext()) {
-            Sprite sprite = (Sprite)i.next();
+        // update other sprites near the screen
+        int left = -TileMapDrawer.getOffsetX(map, viewWidth,
+            map.getPlayer().getX());
+        int margin = TileMapDrawer.tilesToPixels(activationMargin);
+        map.getSpriteGrid().getSpritesBetween(left - margin,
+            left + viewWidth + margin, activeSprites);
+        physics.clear();
+        for (int i=0; i<activeSprites.size(); i++) {
+            Sprite sprite = activeSprites.get(i);
+            sprite.savePosition();
             if (sprite instanceof Creature) {
                 Creature creature = (Creature)sprite;
                 if (creature.getState() == Creature.STATE_DEAD) {
-                    i.remove();
+                    map.removeSprite(creature);
                 } else {
-                    updateCreature(creature, elapsedTime);
+                    physics.add(creature);
                 }
             }
+        }
+        
+        // move the creatures together, in one batch (in parallel
+        // bands if there is an update pool)
+        int creatures = physics.size();
+        physics.update(map, elapsedTime);
+        physics.clear();
+        
+        // then, in order on this thread, the rest of each sprite's
+        // update
+        for (int i=0; i<activeSprites.size(); i++) {
+            Sprite sprite = activeSprites.get(i);
+            
             // normal update
             sprite.update(elapsedTime);
+            
+            // keep the sprite grid in step
+            if (sprite.getX() != sprite.getPreviousX() ||
+                    sprite.getY() != sprite.getPreviousY()) {
+                map.updateSprite(sprite);
+            }
+            
+            // wake up the creature when it's on screen
+            int x = Math.round(sprite.getX());
+            if (sprite instanceof Creature &&
+                    x >= left && x < left + viewWidth) {
+                ((Creature)sprite).wakeUp();
+            }
+        }
+        
+        // finish removing the sprites that died or were collected
+        map.applyRemovals();
+        
+        endTick(event, elapsedTime, creatures);
+    }
+    
+    
+    /**
+     * Reads the next tick of the replay. Returns false at the end
+     * of the replay, or if it can't be read.
+     */
+    private boolean nextReplayTick() {
+        try {
+            return inputReplay.nextTick();
+        }
+        catch (IOException ex) {
+            System.out.println("Couldn't read input replay: " + ex);
+            return false;
         }
     }
     
     
+    /**
+     * Records a tick, if the input is being recorded. Recording
+     * stops if the tick can't be written.
+     */
+    private void recordTick(long elapsedTime, int input) {
+        if (inputRecorder == null) {
+            return;
+        }
+        try {
+            inputRecorder.recordTick(elapsedTime, input);
+        }
+        catch (IOException ex) {
+            System.out.println("Couldn't record input: " + ex);
+            inputRecorder = null;
+        }
+    }
+    
+    
+    /**
+     * Ends the Tick event of an update that moved the specified
+     * number of creatures, if there is one.
+     */
+    private void endTick(GameEvents.Tick event, long elapsedTime,
+            int creatures) {
+        if (event == null) {
+            return;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.elapsedTime = elapsedTime;
+            event.sprites = getSpriteCount();
+            event.activeSprites = activeSprites.size();
+            event.creatures = creatures;
+            event.commit();
+        }
+    }
+    
+    
+    /**
+     * Gets the number of sprites in the current map, not counting
+     * the player.
+     */
+    protected int getSpriteCount() {
+        return (map == null) ? 0 : map.getEntityStore().size();
+    }
+    
+    
     /**
      * Updates the creature, applying gravity for creatures that
      * aren't flying, and checks collisions.
@@ -349,10 +862,13 @@ public class GameEngine extends GameCore
                 player.setState(Creature.STATE_DYING);
                 numLives--;
                 if(numLives==0) {
-                    try {
-                        Thread.sleep(3000);
-                    } catch (InterruptedException ex) {
-                        ex.printStackTrace();
+                    // leave the last frame on screen for a moment
+                    if (screen != null) {
+                        try {
+                            Thread.sleep(3000);
+                        } catch (InterruptedException ex) {
+                            ex.printStackTrace();
+                        }
                     }
                     stop();
                 }
@@ -384,7 +900,7 @@ public class GameEngine extends GameCore
         } else if (powerUp instanceof PowerUp.Goal) {
             // advance to next map      
       
-            map = mapLoader.loadNextMap();
+            setMap(mapLoader.loadNextMap());
             
         }
     }
@@ -0,0 +1,157 @@
+package com.TETOSOFT.tilegame;
+
+import java.io.*;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * HeadlessRunner steps a GameEngine without a display, calling
+ * update() as fast as possible for a number of ticks. It uses the
+ * same maps, sprites and collision code as the windowed game, so it
+ * can be used for soak tests, benchmarks and bots.
+ *
+ * <p>Run it from the project directory so the images/ and maps/
+ * directories are found:
+ *
+ * <pre>
+ * java -cp build/classes com.TETOSOFT.tilegame.HeadlessRunner [-parallel] [-record file] [-replay file] [ticks] [tickTime]
+ * </pre>
+ *
+ * <p>With -parallel, the creatures are moved on the common
+ * ForkJoinPool. With -record, the input of each tick is recorded
+ * to a file; with -replay, the game is played from a recording,
+ * for example one made in the windowed game, until it ends, with
+ * the tick times of the recording instead of tickTime.
+ */
+public class HeadlessRunner
+{
+
+    private static final int DEFAULT_TICKS = 100000;
+
+    public static void main(String[] args) throws IOException
+    {
+        System.setProperty("java.awt.headless", "true");
+
+        GameEngine engine = new GameEngine();
+        boolean replaying = false;
+        int argIndex = 0;
+        while (args.length > argIndex && args[argIndex].startsWith("-")) {
+            String option = args[argIndex++];
+            if (option.equals("-parallel")) {
+                engine.setUpdatePool(ForkJoinPool.commonPool());
+            }
+            else if (option.equals("-record") && args.length > argIndex) {
+                engine.setInputRecording(
+                    new FileOutputStream(args[argIndex++]));
+            }
+            else if (option.equals("-replay") && args.length > argIndex) {
+                engine.setInputReplay(new InputReplay(
+                    new FileInputStream(args[argIndex++])));
+                replaying = true;
+            }
+            else {
+                throw new IllegalArgumentException(
+                    "Unknown option: " + option);
+            }
+        }
+
+        // a replay runs to its end, unless told otherwise
+        long ticks = replaying ? Long.MAX_VALUE : DEFAULT_TICKS;
+        if (args.length > argIndex) {
+            ticks = Long.parseLong(args[argIndex]);
+        }
+
+        long tickTime = engine.getTickTime();
+        if (args.length > argIndex + 1) {
+            tickTime = Long.parseLong(args[argIndex + 1]);
+        }
+
+        long loadStart = System.nanoTime();
+        engine.initHeadless();
+        long loadTime = System.nanoTime() - loadStart;
+
+        HeadlessRunner runner = new HeadlessRunner(engine, tickTime);
+        runner.run(ticks);
+        engine.closeInputRecording();
+
+        AssetPipeline assets = engine.getMapLoader().getAssetPipeline();
+        System.out.println("Startup:   " + (loadTime / 1000000) + " ms (" +
+            assets.getAssetCount() + " images in " +
+            (assets.getTotalTime() / 1000000) + " ms on " +
+            assets.getThreadCount() + " threads, " +
+            assets.getImageCache().getHits() + " from cache)");
+        System.out.println("Ticks:     " + runner.getTicks() +
+            (replaying ? " replayed" : " x " + tickTime + " ms"));
+        System.out.println("Elapsed:   " +
+            (runner.getElapsedTime() / 1000000) + " ms");
+        System.out.println("Ticks/sec: " +
+            Math.round(runner.getTicksPerSecond()));
+        System.out.println("Map load:  " +
+            (engine.getMapLoader().getLastLoadTime() / 1000) + " us, " +
+            (engine.getMapLoader().getLastHandoffWait() / 1000) +
+            " us handoff wait");
+    }
+
+    private GameEngine engine;
+    private long tickTime;
+    private long ticks;
+    private long elapsedTime;
+
+    /**
+     * Creates a new HeadlessRunner for a GameEngine that has
+     * already been set up with initHeadless(). Each tick advances
+     * the game by tickTime milliseconds.
+     */
+    public HeadlessRunner(GameEngine engine, long tickTime)
+    {
+        this.engine = engine;
+        this.tickTime = tickTime;
+    }
+
+
+    /**
+     * Runs up to the specified number of ticks, stopping early if
+     * the game stops. Returns the number of ticks run.
+     */
+    public long run(long numTicks)
+    {
+        long startTime = System.nanoTime();
+        long count = 0;
+        while (count < numTicks && engine.isRunning()) {
+            engine.update(tickTime);
+            count++;
+        }
+        elapsedTime += System.nanoTime() - startTime;
+        ticks += count;
+        return count;
+    }
+
+
+    /**
+     * Gets the total number of ticks run.
+     */
+    public long getTicks() {
+        return ticks;
+    }
+
+
+    /**
+     * Gets the total real time spent running ticks, in
+     * nanoseconds.
+     */
+    public long getElapsedTime() {
+        return elapsedTime;
+    }
+
+
+    /**
+     * Gets the average number of ticks run per second of real
+     * time.
+     */
+    public double getTicksPerSecond() {
+        if (elapsedTime == 0) {
+            return 0;
+        }
+        return ticks * 1000000000.0 / elapsedTime;
+    }
+
+}
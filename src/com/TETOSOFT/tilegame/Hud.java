@@ -0,0 +1,203 @@
+package com.TETOSOFT.tilegame;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+
+/**
+    The Hud class draws the heads-up display: fixed labels and
+    labeled numbers, like "Coins: 12". Instead of laying out and
+    rasterising text with drawString() every frame, each label and
+    the digits 0 to 9 are rasterised once into images, and each
+    field is put together from them into one image. A field is
+    only put together again when its value changes, so drawing the
+    HUD is one drawImage() per field.
+*/
+public class Hud {
+
+    private static final String DIGITS = "0123456789";
+
+    private GraphicsConfiguration gc;
+    private Font font;
+    private FontMetrics metrics;
+    private ArrayList<Field> fields;
+
+    // digit images by color, so fields of the same color share
+    private ArrayList<Color> digitColors;
+    private ArrayList<Image[]> digitImages;
+
+    /**
+        Creates a new Hud that draws with the specified Font. If
+        the GraphicsConfiguration is null, the images are plain
+        BufferedImages so no display is needed.
+    */
+    public Hud(Font font, GraphicsConfiguration gc) {
+        this.font = font;
+        this.gc = gc;
+        fields = new ArrayList<Field>();
+        digitColors = new ArrayList<Color>();
+        digitImages = new ArrayList<Image[]>();
+
+        Graphics2D g = createImage(1, 1).createGraphics();
+        metrics = g.getFontMetrics(font);
+        g.dispose();
+    }
+
+
+    /**
+        Adds a fixed label, drawn with its baseline at (x, y).
+    */
+    public void addLabel(String label, Color color, int x, int y) {
+        Field field = new Field(color, x, y);
+        field.image = renderText(label, color);
+        fields.add(field);
+    }
+
+
+    /**
+        Adds a labeled number, drawn with its baseline at (x, y).
+        Returns the id of the field, used to set its value.
+    */
+    public int addField(String label, Color color, int x, int y) {
+        Field field = new Field(color, x, y);
+        field.labelImage = renderText(label, color);
+        field.digits = getDigits(color);
+        field.value = -1;
+        fields.add(field);
+        setValue(fields.size() - 1, 0);
+        return fields.size() - 1;
+    }
+
+
+    /**
+        Sets the number shown by a field. The field's image is only
+        put together again if the value changed.
+    */
+    public void setValue(int id, int value) {
+        Field field = fields.get(id);
+        if (field.value == value) {
+            return;
+        }
+        field.value = value;
+
+        // split the number into digits, right to left
+        int numDigits = 0;
+        int[] digits = field.digitBuffer;
+        long n = Math.abs((long)value);
+        do {
+            digits[numDigits++] = (int)(n % 10);
+            n /= 10;
+        }
+        while (n > 0);
+        String sign = (value < 0) ? "-" : "";
+
+        // put the label and the digits together
+        int width = field.labelImage.getWidth(null) +
+            metrics.stringWidth(sign);
+        for (int i=0; i<numDigits; i++) {
+            width += field.digits[digits[i]].getWidth(null);
+        }
+        if (field.image == null || field.image.getWidth(null) < width) {
+            field.image = createImage(width, metrics.getHeight());
+        }
+
+        Graphics2D g = (Graphics2D)field.image.getGraphics();
+        g.setComposite(AlphaComposite.Clear);
+        g.fillRect(0, 0, field.image.getWidth(null),
+            field.image.getHeight(null));
+        g.setComposite(AlphaComposite.SrcOver);
+        g.drawImage(field.labelImage, 0, 0, null);
+        int x = field.labelImage.getWidth(null);
+        if (value < 0) {
+            g.setFont(font);
+            g.setColor(field.color);
+            g.drawString(sign, x, metrics.getAscent());
+            x += metrics.stringWidth(sign);
+        }
+        for (int i=numDigits-1; i>=0; i--) {
+            Image digit = field.digits[digits[i]];
+            g.drawImage(digit, x, 0, null);
+            x += digit.getWidth(null);
+        }
+        g.dispose();
+    }
+
+
+    /**
+        Draws every label and field.
+    */
+    public void draw(Graphics2D g) {
+        for (int i=0; i<fields.size(); i++) {
+            Field field = fields.get(i);
+            g.drawImage(field.image, field.x,
+                field.y - metrics.getAscent(), null);
+        }
+    }
+
+
+    /**
+        Gets the images of the digits 0 to 9 in a color,
+        rasterising them the first time the color is used.
+    */
+    private Image[] getDigits(Color color) {
+        int i = digitColors.indexOf(color);
+        if (i != -1) {
+            return digitImages.get(i);
+        }
+        Image[] digits = new Image[DIGITS.length()];
+        for (int d=0; d<digits.length; d++) {
+            digits[d] = renderText(DIGITS.substring(d, d + 1), color);
+        }
+        digitColors.add(color);
+        digitImages.add(digits);
+        return digits;
+    }
+
+
+    /**
+        Rasterises a string into an image as tall as a line of
+        text, with the baseline at the font's ascent.
+    */
+    private Image renderText(String text, Color color) {
+        BufferedImage image = createImage(
+            Math.max(1, metrics.stringWidth(text)), metrics.getHeight());
+        Graphics2D g = image.createGraphics();
+        g.setFont(font);
+        g.setColor(color);
+        g.drawString(text, 0, metrics.getAscent());
+        g.dispose();
+        return image;
+    }
+
+
+    private BufferedImage createImage(int width, int height) {
+        if (gc != null) {
+            return gc.createCompatibleImage(width, height,
+                Transparency.TRANSLUCENT);
+        }
+        return new BufferedImage(width, height,
+            BufferedImage.TYPE_INT_ARGB);
+    }
+
+
+    /**
+        A label or labeled number, and its current image.
+    */
+    private static class Field {
+        Color color;
+        int x;
+        int y;
+        int value;
+        Image labelImage;
+        Image[] digits;
+        int[] digitBuffer = new int[10];
+        Image image;
+
+        Field(Color color, int x, int y) {
+            this.color = color;
+            this.x = x;
+            this.y = y;
+        }
+    }
+
+}
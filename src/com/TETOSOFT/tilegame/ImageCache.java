@@ -0,0 +1,245 @@
+package com.TETOSOFT.tilegame;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+    The ImageCache class keeps images derived from the image files
+    (mirrored and flipped sprite frames) in a directory on disk, so
+    later starts can read them back instead of transforming them
+    again.
+
+    <p>Entries are content-addressed: the file name is a hash of the
+    source file's bytes and the name of the transform. Changing a
+    source image changes its hash, so stale entries are never used.
+    Entries are stored as raw ARGB:
+    <pre>
+    int   magic ("SIMG")
+    int   width, height
+    int[] pixels, width * height, row by row
+    </pre>
+
+    <p>A cache entry that can't be read or written is treated as a
+    miss.
+*/
+public class ImageCache {
+
+    /**
+        The default cache directory.
+    */
+    public static final String DEFAULT_DIRECTORY = "cache";
+
+    private static final String EXTENSION = ".argb";
+    private static final int MAGIC = 0x53494D47;
+    private static final int HEADER_SIZE = 4 + 4 + 4;
+
+    // bump this if the way derived images are made changes
+    private static final int VERSION = 1;
+
+    private File directory;
+    private int hits;
+    private int misses;
+
+    /**
+        Creates a new ImageCache in the specified directory. The
+        directory is created when the first entry is written.
+    */
+    public ImageCache(File directory) {
+        this.directory = directory;
+    }
+
+
+    /**
+        Gets the hash of the bytes of a source file, used to make
+        cache keys.
+    */
+    public static String hash(byte[] source) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] bytes = digest.digest(source);
+            StringBuffer hex = new StringBuffer();
+            for (int i=0; i<bytes.length; i++) {
+                hex.append(Character.forDigit((bytes[i] >> 4) & 0xf, 16));
+                hex.append(Character.forDigit(bytes[i] & 0xf, 16));
+            }
+            return hex.toString();
+        }
+        catch (NoSuchAlgorithmException ex) {
+            // every Java platform has SHA-1
+            throw new RuntimeException(ex);
+        }
+    }
+
+
+    /**
+        Gets a cached image made from the source with the specified
+        hash by the named transform. Returns null on a miss. If the
+        GraphicsConfiguration isn't null, the image is a compatible
+        image with the specified transparency.
+    */
+    public Image get(String sourceHash, String transform,
+        GraphicsConfiguration gc, int transparency)
+    {
+        File file = getFile(sourceHash, transform);
+        BufferedImage image = null;
+        if (file.exists()) {
+            try {
+                image = read(file, gc, transparency);
+            }
+            catch (IOException ex) {
+                // unreadable - make it again
+            }
+        }
+        countLookup(image != null);
+        return image;
+    }
+
+
+    /**
+        Stores an image made from the source with the specified
+        hash by the named transform.
+    */
+    public void put(String sourceHash, String transform, Image image) {
+        int width = image.getWidth(null);
+        int height = image.getHeight(null);
+        int[] pixels = new int[width * height];
+        if (image instanceof BufferedImage) {
+            ((BufferedImage)image).getRGB(0, 0, width, height,
+                pixels, 0, width);
+        }
+        else {
+            BufferedImage copy = new BufferedImage(width, height,
+                BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g = copy.createGraphics();
+            g.drawImage(image, 0, 0, null);
+            g.dispose();
+            copy.getRGB(0, 0, width, height, pixels, 0, width);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(
+            HEADER_SIZE + pixels.length * 4);
+        buffer.putInt(MAGIC);
+        buffer.putInt(width);
+        buffer.putInt(height);
+        buffer.asIntBuffer().put(pixels);
+
+        // write to a temporary file and rename it, so a reader never
+        // sees half an entry
+        File file = getFile(sourceHash, transform);
+        try {
+            directory.mkdirs();
+            File temp = File.createTempFile("image", ".tmp", directory);
+            OutputStream out = new FileOutputStream(temp);
+            try {
+                out.write(buffer.array());
+            }
+            finally {
+                out.close();
+            }
+            if (!temp.renameTo(file)) {
+                temp.delete();
+            }
+        }
+        catch (IOException ex) {
+            // can't cache it - it will be made again next time
+        }
+    }
+
+
+    /**
+        Deletes every entry in the cache.
+    */
+    public void clear() {
+        File[] files = directory.listFiles();
+        for (int i=0; files != null && i<files.length; i++) {
+            if (files[i].getName().endsWith(EXTENSION)) {
+                files[i].delete();
+            }
+        }
+    }
+
+
+    /**
+        Gets the number of lookups that found an entry.
+    */
+    public synchronized int getHits() {
+        return hits;
+    }
+
+
+    /**
+        Gets the number of lookups that didn't find an entry.
+    */
+    public synchronized int getMisses() {
+        return misses;
+    }
+
+
+    private synchronized void countLookup(boolean hit) {
+        if (hit) {
+            hits++;
+        }
+        else {
+            misses++;
+        }
+    }
+
+
+    private File getFile(String sourceHash, String transform) {
+        String key = hash((sourceHash + "/" + transform + "/" +
+            VERSION).getBytes());
+        return new File(directory, key + EXTENSION);
+    }
+
+
+    private BufferedImage read(File file, GraphicsConfiguration gc,
+        int transparency)
+        throws IOException
+    {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            MappedByteBuffer buffer = channel.map(
+                FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < HEADER_SIZE ||
+                buffer.getInt() != MAGIC)
+            {
+                return null;
+            }
+            int width = buffer.getInt();
+            int height = buffer.getInt();
+            if (width <= 0 || height <= 0 ||
+                buffer.remaining() != (long)width * height * 4)
+            {
+                return null;
+            }
+
+            int[] pixels = new int[width * height];
+            IntBuffer ints = buffer.asIntBuffer();
+            ints.get(pixels);
+
+            BufferedImage image;
+            if (gc != null) {
+                image = gc.createCompatibleImage(width, height,
+                    transparency);
+            }
+            else {
+                image = new BufferedImage(width, height,
+                    BufferedImage.TYPE_INT_ARGB);
+            }
+            image.setRGB(0, 0, width, height, pixels, 0, width);
+            return image;
+        }
+        finally {
+            in.close();
+        }
+    }
+
+}
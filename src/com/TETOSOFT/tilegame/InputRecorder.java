@@ -0,0 +1,138 @@
+package com.TETOSOFT.tilegame;
+
+import java.io.*;
+
+/**
+    The InputRecorder class writes the input the game used on each
+    tick to a compact binary stream, so an InputReplay can play the
+    game again exactly: the same ticks, doing the same work.
+
+    <p>Each tick is the time it advanced the game by and which of
+    the recorded GameActions were pressed, as bits. The header
+    also holds the view size and activation margin, since they
+    decide which sprites are updated.
+
+    <p>The format is:
+    <pre>
+    int    magic ("SMIR")
+    short  version
+    int    view width, view height (in pixels)
+    int    activation margin (in tiles)
+    byte   number of actions
+    UTF    action names
+    ticks, each:
+        varint (action bits &lt;&lt; 2) | time code
+        varint elapsed time (in milliseconds), if the code is 3
+    </pre>
+    The time code says how the elapsed time compares with the
+    last tick's: 0 if it is the same, 1 if it is 1 ms longer, 2
+    if it is 1 ms shorter, or 3 if it follows. A varint is an
+    unsigned number in groups of 7 bits, low group first, with
+    the top bit set on all but the last byte. With a fixed
+    timestep, whose ticks differ by at most 1 ms, and a few
+    actions, a tick is one byte.
+*/
+public class InputRecorder {
+
+    static final int MAGIC = 0x534D4952;
+    static final short VERSION = 2;
+
+    // the most actions that fit in the bits of a tick
+    static final int MAX_ACTIONS = 29;
+
+    // how a tick's elapsed time compares with the last tick's
+    static final int TIME_SAME = 0;
+    static final int TIME_LONGER = 1;
+    static final int TIME_SHORTER = 2;
+    static final int TIME_FOLLOWS = 3;
+
+    private DataOutputStream out;
+    private int numActions;
+    private long lastElapsedTime;
+    private long tickCount;
+
+    /**
+        Creates a new InputRecorder and writes the header to the
+        stream.
+    */
+    public InputRecorder(OutputStream out, int viewWidth,
+        int viewHeight, int activationMargin, String[] actionNames)
+        throws IOException
+    {
+        if (actionNames.length > MAX_ACTIONS) {
+            throw new IllegalArgumentException(
+                "Too many actions: " + actionNames.length);
+        }
+        this.out = new DataOutputStream(new BufferedOutputStream(out));
+        numActions = actionNames.length;
+
+        this.out.writeInt(MAGIC);
+        this.out.writeShort(VERSION);
+        this.out.writeInt(viewWidth);
+        this.out.writeInt(viewHeight);
+        this.out.writeInt(activationMargin);
+        this.out.writeByte(numActions);
+        for (int i=0; i<numActions; i++) {
+            this.out.writeUTF(actionNames[i]);
+        }
+    }
+
+
+    /**
+        Records a tick that advanced the game by elapsedTime
+        milliseconds with the specified actions pressed. Bit i of
+        actionBits is set if action i was pressed.
+    */
+    public void recordTick(long elapsedTime, int actionBits)
+        throws IOException
+    {
+        if (elapsedTime < 0 || (actionBits >>> numActions) != 0) {
+            throw new IllegalArgumentException("Bad tick: " +
+                elapsedTime + " ms, actions " + actionBits);
+        }
+        int timeCode = TIME_FOLLOWS;
+        if (tickCount > 0) {
+            if (elapsedTime == lastElapsedTime) {
+                timeCode = TIME_SAME;
+            }
+            else if (elapsedTime == lastElapsedTime + 1) {
+                timeCode = TIME_LONGER;
+            }
+            else if (elapsedTime == lastElapsedTime - 1) {
+                timeCode = TIME_SHORTER;
+            }
+        }
+        writeVarLong(((long)actionBits << 2) | timeCode);
+        if (timeCode == TIME_FOLLOWS) {
+            writeVarLong(elapsedTime);
+        }
+        lastElapsedTime = elapsedTime;
+        tickCount++;
+    }
+
+
+    /**
+        Gets the number of ticks recorded.
+    */
+    public long getTickCount() {
+        return tickCount;
+    }
+
+
+    /**
+        Writes any buffered ticks and closes the stream.
+    */
+    public void close() throws IOException {
+        out.close();
+    }
+
+
+    private void writeVarLong(long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int)(value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int)value);
+    }
+
+}
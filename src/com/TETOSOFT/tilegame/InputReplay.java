@@ -0,0 +1,163 @@
+package com.TETOSOFT.tilegame;
+
+import java.io.*;
+
+/**
+    The InputReplay class reads back the ticks written by an
+    InputRecorder, one at a time. See InputRecorder for the
+    format.
+*/
+public class InputReplay {
+
+    private DataInputStream in;
+    private int viewWidth;
+    private int viewHeight;
+    private int activationMargin;
+    private String[] actionNames;
+    private long elapsedTime;
+    private int actionBits;
+    private long tickCount;
+
+    /**
+        Creates a new InputReplay, reading the header from the
+        stream.
+    */
+    public InputReplay(InputStream in) throws IOException {
+        this.in = new DataInputStream(new BufferedInputStream(in));
+
+        if (this.in.readInt() != InputRecorder.MAGIC) {
+            throw new IOException("Not an input recording");
+        }
+        short version = this.in.readShort();
+        if (version != InputRecorder.VERSION) {
+            throw new IOException("Unsupported input recording version " +
+                version);
+        }
+        viewWidth = this.in.readInt();
+        viewHeight = this.in.readInt();
+        activationMargin = this.in.readInt();
+        int numActions = this.in.readUnsignedByte();
+        if (numActions > InputRecorder.MAX_ACTIONS) {
+            throw new IOException("Corrupt input recording");
+        }
+        actionNames = new String[numActions];
+        for (int i=0; i<numActions; i++) {
+            actionNames[i] = this.in.readUTF();
+        }
+    }
+
+
+    /**
+        Gets the width of the view the game was recorded with.
+    */
+    public int getViewWidth() {
+        return viewWidth;
+    }
+
+
+    /**
+        Gets the height of the view the game was recorded with.
+    */
+    public int getViewHeight() {
+        return viewHeight;
+    }
+
+
+    /**
+        Gets the activation margin the game was recorded with.
+    */
+    public int getActivationMargin() {
+        return activationMargin;
+    }
+
+
+    /**
+        Gets the names of the recorded actions, in bit order.
+    */
+    public String[] getActionNames() {
+        return actionNames.clone();
+    }
+
+
+    /**
+        Reads the next tick. Returns false at the end of the
+        recording.
+    */
+    public boolean nextTick() throws IOException {
+        int first = in.read();
+        if (first == -1) {
+            return false;
+        }
+        long value = readVarLong(first);
+        int timeCode = (int)(value & 3);
+        if (timeCode == InputRecorder.TIME_FOLLOWS) {
+            elapsedTime = readVarLong(in.readUnsignedByte());
+        }
+        else if (tickCount == 0) {
+            throw new IOException("Corrupt input recording");
+        }
+        else if (timeCode == InputRecorder.TIME_LONGER) {
+            elapsedTime++;
+        }
+        else if (timeCode == InputRecorder.TIME_SHORTER) {
+            elapsedTime--;
+        }
+        actionBits = (int)(value >>> 2);
+        tickCount++;
+        return true;
+    }
+
+
+    /**
+        Gets the time the current tick advanced the game by, in
+        milliseconds.
+    */
+    public long getElapsedTime() {
+        return elapsedTime;
+    }
+
+
+    /**
+        Gets the actions pressed in the current tick. Bit i is set
+        if action i was pressed.
+    */
+    public int getActionBits() {
+        return actionBits;
+    }
+
+
+    /**
+        Gets the number of ticks read.
+    */
+    public long getTickCount() {
+        return tickCount;
+    }
+
+
+    /**
+        Closes the stream.
+    */
+    public void close() throws IOException {
+        in.close();
+    }
+
+
+    /**
+        Reads a varint whose first byte has already been read.
+        The end of the stream inside a varint is an EOFException.
+    */
+    private long readVarLong(int b) throws IOException {
+        long value = b & 0x7F;
+        int shift = 7;
+        while ((b & 0x80) != 0) {
+            if (shift > 63) {
+                throw new IOException("Corrupt input recording");
+            }
+            b = in.readUnsignedByte();
+            value |= (long)(b & 0x7F) << shift;
+            shift += 7;
+        }
+        return value;
+    }
+
+}
@@ -0,0 +1,61 @@
+package com.TETOSOFT.tilegame;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+    The MapCompiler compiles text maps into the binary map format
+    read by MapLoader (see MapData). Each maps/mapN.txt is written
+    to maps/mapN.map next to it. The text maps stay the source;
+    MapLoader ignores a compiled map that is older than its text
+    map.
+
+    <pre>
+    java -cp build/classes com.TETOSOFT.tilegame.MapCompiler [map.txt ...]
+    </pre>
+
+    With no arguments, every text map in the maps/ directory is
+    compiled.
+*/
+public class MapCompiler {
+
+    public static void main(String[] args) throws IOException {
+        String[] filenames = args;
+        if (filenames.length == 0) {
+            File[] files = new File("maps").listFiles();
+            int count = 0;
+            filenames = new String[files == null ? 0 : files.length];
+            for (int i=0; i<filenames.length; i++) {
+                if (files[i].getName().endsWith(MapData.TEXT_EXTENSION)) {
+                    filenames[count++] = files[i].getPath();
+                }
+            }
+            String[] textFiles = new String[count];
+            System.arraycopy(filenames, 0, textFiles, 0, count);
+            filenames = textFiles;
+        }
+
+        for (int i=0; i<filenames.length; i++) {
+            System.out.println(compile(filenames[i]));
+        }
+    }
+
+
+    /**
+        Compiles a text map to a binary map with the same name and
+        the binary extension. Returns the name of the binary map.
+    */
+    public static String compile(String textFilename)
+        throws IOException
+    {
+        String name = textFilename;
+        if (name.endsWith(MapData.TEXT_EXTENSION)) {
+            name = name.substring(0,
+                name.length() - MapData.TEXT_EXTENSION.length());
+        }
+        String binaryFilename = name + MapData.BINARY_EXTENSION;
+        MapData.readText(textFilename).writeBinary(binaryFilename);
+        return binaryFilename;
+    }
+
+}
@@ -0,0 +1,296 @@
+package com.TETOSOFT.tilegame;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+
+/**
+    The MapData class holds a parsed map: a plane of tile ids and
+    a table of sprite spawns. It is read from either the text map
+    format or the compiled binary map format, and the MapLoader
+    turns it into a TileMap.
+
+    <p>Tile ids are 1 for tile A, 2 for tile B, and so on, with 0
+    for no tile. Each spawn has a type, which is the character
+    used for the sprite in the text format ('o' for a coin, '1'
+    for a grub, etc.), and a tile location.
+
+    <p>The binary format is:
+    <pre>
+    int    magic ("SMAP")
+    short  version
+    int    width, height (in tiles)
+    int    number of spawns
+    byte[] tile ids, width * height, row by row
+    spawns, each: byte type, int x, int y
+    </pre>
+*/
+public class MapData {
+
+    /**
+        The file extension of text maps.
+    */
+    public static final String TEXT_EXTENSION = ".txt";
+
+    /**
+        The file extension of compiled binary maps.
+    */
+    public static final String BINARY_EXTENSION = ".map";
+
+    private static final int MAGIC = 0x534D4150;
+    private static final short VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 2 + 4 + 4 + 4;
+    private static final int SPAWN_SIZE = 1 + 4 + 4;
+
+    // the most distinct tiles, A to Z
+    private static final int NUM_TILE_CHARS = 26;
+
+    private int width;
+    private int height;
+    private byte[] tileIds;
+    private int numSpawns;
+    private byte[] spawnTypes;
+    private int[] spawnX;
+    private int[] spawnY;
+
+    private MapData(int width, int height, int numSpawns) {
+        this.width = width;
+        this.height = height;
+        this.numSpawns = numSpawns;
+        tileIds = new byte[width * height];
+        spawnTypes = new byte[numSpawns];
+        spawnX = new int[numSpawns];
+        spawnY = new int[numSpawns];
+    }
+
+
+    /**
+        Reads a map in the text format. Every character is a
+        tile (A, B, C, etc.) or a sprite, and lines starting with
+        # are comments.
+    */
+    public static MapData readText(String filename)
+        throws IOException
+    {
+        ArrayList<String> lines = new ArrayList<String>();
+        int width = 0;
+        int numSpawns = 0;
+
+        // read every line in the text file into the list
+        BufferedReader reader = new BufferedReader(
+            new FileReader(filename));
+        try {
+            while (true) {
+                String line = reader.readLine();
+                // no more lines to read
+                if (line == null) {
+                    break;
+                }
+
+                // add every line except for comments
+                if (!line.startsWith("#")) {
+                    lines.add(line);
+                    width = Math.max(width, line.length());
+                    for (int x=0; x<line.length(); x++) {
+                        if (isSpawn(line.charAt(x))) {
+                            numSpawns++;
+                        }
+                    }
+                }
+            }
+        }
+        finally {
+            reader.close();
+        }
+
+        // parse the lines
+        MapData data = new MapData(width, lines.size(), numSpawns);
+        int spawn = 0;
+        for (int y=0; y<data.height; y++) {
+            String line = lines.get(y);
+            for (int x=0; x<line.length(); x++) {
+                char ch = line.charAt(x);
+
+                // check if the char represents tile A, B, C etc.
+                int tile = ch - 'A';
+                if (tile >= 0 && tile < NUM_TILE_CHARS) {
+                    data.tileIds[y * width + x] = (byte)(tile + 1);
+                }
+
+                // check if the char represents a sprite
+                else if (isSpawn(ch)) {
+                    data.spawnTypes[spawn] = (byte)ch;
+                    data.spawnX[spawn] = x;
+                    data.spawnY[spawn] = y;
+                    spawn++;
+                }
+            }
+        }
+        return data;
+    }
+
+
+    /**
+        Reads a map in the compiled binary format, mapping the
+        file into memory instead of reading it through a stream.
+    */
+    public static MapData readBinary(String filename)
+        throws IOException
+    {
+        FileInputStream in = new FileInputStream(filename);
+        try {
+            FileChannel channel = in.getChannel();
+            MappedByteBuffer buffer = channel.map(
+                FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (buffer.remaining() < HEADER_SIZE ||
+                buffer.getInt() != MAGIC)
+            {
+                throw new IOException("Not a compiled map: " + filename);
+            }
+            short version = buffer.getShort();
+            if (version != VERSION) {
+                throw new IOException("Unsupported map version " +
+                    version + ": " + filename);
+            }
+
+            int width = buffer.getInt();
+            int height = buffer.getInt();
+            int numSpawns = buffer.getInt();
+            if (width < 0 || height < 0 || numSpawns < 0 ||
+                buffer.remaining() !=
+                (long)width * height + (long)numSpawns * SPAWN_SIZE)
+            {
+                throw new IOException("Corrupt compiled map: " + filename);
+            }
+
+            MapData data = new MapData(width, height, numSpawns);
+            buffer.get(data.tileIds);
+            for (int i=0; i<numSpawns; i++) {
+                data.spawnTypes[i] = buffer.get();
+                data.spawnX[i] = buffer.getInt();
+                data.spawnY[i] = buffer.getInt();
+            }
+            return data;
+        }
+        finally {
+            in.close();
+        }
+    }
+
+
+    /**
+        Reads a map in either format, based on the file
+        extension.
+    */
+    public static MapData read(String filename)
+        throws IOException
+    {
+        if (filename.endsWith(BINARY_EXTENSION)) {
+            return readBinary(filename);
+        }
+        else {
+            return readText(filename);
+        }
+    }
+
+
+    /**
+        Writes this map in the compiled binary format.
+    */
+    public void writeBinary(String filename)
+        throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE +
+            tileIds.length + numSpawns * SPAWN_SIZE);
+        buffer.putInt(MAGIC);
+        buffer.putShort(VERSION);
+        buffer.putInt(width);
+        buffer.putInt(height);
+        buffer.putInt(numSpawns);
+        buffer.put(tileIds);
+        for (int i=0; i<numSpawns; i++) {
+            buffer.put(spawnTypes[i]);
+            buffer.putInt(spawnX[i]);
+            buffer.putInt(spawnY[i]);
+        }
+
+        OutputStream out = new FileOutputStream(filename);
+        try {
+            out.write(buffer.array());
+        }
+        finally {
+            out.close();
+        }
+    }
+
+
+    /**
+        Checks if a character in the text format is a sprite.
+    */
+    private static boolean isSpawn(char ch) {
+        return (ch == 'o' || ch == '!' || ch == '*' ||
+            ch == '1' || ch == '2');
+    }
+
+
+    /**
+        Gets the width of this map (number of tiles across).
+    */
+    public int getWidth() {
+        return width;
+    }
+
+
+    /**
+        Gets the height of this map (number of tiles down).
+    */
+    public int getHeight() {
+        return height;
+    }
+
+
+    /**
+        Gets the tile ids of this map, row by row. The array is
+        not a copy and must not be changed.
+    */
+    public byte[] getTileIds() {
+        return tileIds;
+    }
+
+
+    /**
+        Gets the number of sprite spawns in this map.
+    */
+    public int getSpawnCount() {
+        return numSpawns;
+    }
+
+
+    /**
+        Gets the type of a spawn, which is the character used for
+        the sprite in the text format.
+    */
+    public char getSpawnType(int i) {
+        return (char)spawnTypes[i];
+    }
+
+
+    /**
+        Gets the tile x location of a spawn.
+    */
+    public int getSpawnX(int i) {
+        return spawnX[i];
+    }
+
+
+    /**
+        Gets the tile y location of a spawn.
+    */
+    public int getSpawnY(int i) {
+        return spawnY[i];
+    }
+
+}
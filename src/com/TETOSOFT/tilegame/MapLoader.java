@@ -1,12 +1,19 @@
 package com.TETOSOFT.tilegame;
 
 import java.awt.*;
-import java.awt.geom.AffineTransform;
 import java.io.*;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import javax.imageio.ImageIO;
 import javax.swing.ImageIcon;
 
 import com.TETOSOFT.graphics.*;
+import com.TETOSOFT.test.GameEvents;
 import com.TETOSOFT.tilegame.sprites.*;
 
 
@@ -14,10 +21,30 @@ import com.TETOSOFT.tilegame.sprites.*;
     The ResourceManager class loads and manages tile Images and
     "host" Sprites used in the game. Game Sprites are cloned from
     "host" Sprites.
+
+    <p>The tiles and sprite frames are packed into a TextureAtlas
+    once they are loaded, so they are all drawn from one or a few
+    atlas pages instead of dozens of small images.
+
+    <p>Parsed maps are kept as templates in a small cache with
+    least-recently-used eviction, so reloading a map after the
+    player dies doesn't read or parse the map file again.
+
+    <p>As soon as a map is loaded with loadNextMap(), the map after
+    it is loaded and instantiated on a background thread, so going
+    to the next level doesn't stall the game loop. If the preload
+    isn't there, the next map is loaded synchronously instead.
 */
 public class MapLoader 
 {
-    private ArrayList tiles;
+    /**
+        The most parsed maps kept in the template cache.
+    */
+    public static final int MAX_CACHED_MAPS = 4;
+
+    private ArrayList<Image> tiles;
+    private Image[] tileImages;
+    private AtlasRegion[] tileRegions;
     public int currentMap;
     private GraphicsConfiguration gc;
 
@@ -29,16 +56,77 @@ public class MapLoader
     private Sprite grubSprite;
     private Sprite flySprite;
 
+    private AssetPipeline assets;
+    private TextureAtlas atlas;
+
+    // parsed maps by file name, least recently used first
+    private LinkedHashMap<String, MapData> mapCache =
+        new LinkedHashMap<String, MapData>(
+            MAX_CACHED_MAPS * 2, 0.75f, true) {
+            protected boolean removeEldestEntry(
+                Map.Entry<String, MapData> eldest) {
+                return size() > MAX_CACHED_MAPS;
+            }
+        };
+    private int cacheHits;
+    private int cacheMisses;
+
+    // the map being loaded in the background, if any
+    private boolean preloading = true;
+    private FutureTask<LoadedMap> preload;
+    private int preloadAfterMap;
+    private long lastLoadTime;
+    private long lastHandoffWait;
+
     /**
         Creates a new ResourceManager with the specified
-        GraphicsConfiguration.
+        GraphicsConfiguration. If the GraphicsConfiguration is
+        null, images are loaded into plain BufferedImages so no
+        display is needed.
     */
     public MapLoader(GraphicsConfiguration gc) 
     {
         this.gc = gc;
-        loadTileImages();
-        loadCreatureSprites();
-        loadPowerUpSprites();
+
+        // request every image first so they all decode in
+        // parallel, then build the sprites once they are done
+        assets = new AssetPipeline(gc);
+        assets.setImageCache(new ImageCache(
+            new File(ImageCache.DEFAULT_DIRECTORY)));
+        List<Future<Image>> tileFutures = requestTileImages();
+        List<List<Future<Image>>> creatureFutures =
+            requestCreatureImages();
+        List<Future<Image>> powerUpFutures = requestPowerUpImages();
+        assets.join();
+
+        atlas = new TextureAtlas(gc);
+        loadTileImages(tileFutures);
+        loadCreatureSprites(creatureFutures);
+        loadPowerUpSprites(powerUpFutures);
+        atlas.pack();
+
+        // tile Images are views of the atlas from now on
+        for (int i=0; i<tileRegions.length; i++) {
+            tileImages[i] = tileRegions[i].getImage();
+            tiles.set(i, tileImages[i]);
+        }
+    }
+
+
+    /**
+        Gets the TextureAtlas holding the tiles and sprite frames.
+    */
+    public TextureAtlas getTextureAtlas() {
+        return atlas;
+    }
+
+
+    /**
+        Gets the AssetPipeline that loaded the images, for its
+        startup timings.
+    */
+    public AssetPipeline getAssetPipeline() {
+        return assets;
     }
 
 
@@ -47,8 +135,38 @@ public class MapLoader
     */
     public Image loadImage(String name) 
     {
-        String filename = "images/" + name;
-        return new ImageIcon(filename).getImage();
+        File file = findImageFile(name);
+        if (gc != null) {
+            return new ImageIcon(file.getPath()).getImage();
+        }
+
+        try {
+            return ImageIO.read(file);
+        }
+        catch (IOException ex) {
+            // missing or unreadable - same as a broken ImageIcon
+            return null;
+        }
+    }
+
+
+    /**
+        Finds an image in the images/ directory, ignoring case,
+        since the image files don't all use the same case for
+        their extensions.
+    */
+    static File findImageFile(String name)
+    {
+        File file = new File("images/" + name);
+        if (!file.exists()) {
+            String[] names = file.getParentFile().list();
+            for (int i=0; names != null && i<names.length; i++) {
+                if (names[i].equalsIgnoreCase(name)) {
+                    return new File(file.getParentFile(), names[i]);
+                }
+            }
+        }
+        return file;
     }
 
 
@@ -66,60 +184,166 @@ public class MapLoader
 
     private Image getScaledImage(Image image, float x, float y) 
     {
+        return AssetPipeline.createScaledImage(gc, image, x, y);
+    }
 
-        // set up the transform
-        AffineTransform transform = new AffineTransform();
-        transform.scale(x, y);
-        transform.translate(
-            (x-1) * image.getWidth(null) / 2,
-            (y-1) * image.getHeight(null) / 2);
-
-        // create a transparent (not translucent) image
-        Image newImage = gc.createCompatibleImage(
-            image.getWidth(null),
-            image.getHeight(null),
-            Transparency.BITMASK);
 
-        // draw the transformed image
-        Graphics2D g = (Graphics2D)newImage.getGraphics();
-        g.drawImage(image, transform, null);
-        g.dispose();
+    public TileMap loadNextMap() 
+    {
+        LoadedMap next = takePreload();
+        if (next == null) {
+            // nothing preloaded - load it now
+            next = loadMapAfter(currentMap);
+        }
+        if (next == null) {
+            return null;
+        }
 
-        return newImage;
+        currentMap = next.mapNumber;
+        lastLoadTime = next.loadTime;
+        startPreload();
+        return next.map;
     }
 
 
-    public TileMap loadNextMap() 
+    /**
+        Loads the map that comes after the specified map number,
+        going back to the first map after the last one. Returns
+        null if there are no maps to load.
+    */
+    private LoadedMap loadMapAfter(int mapNumber)
     {
+        long startTime = System.nanoTime();
         TileMap map = null;
         while (map == null) 
         {
-            currentMap++;
+            mapNumber++;
             try {
-                map = loadMap(
-                    "maps/map" + currentMap + ".txt");
+                map = loadMap(getMapFile(mapNumber));
             }
             catch (IOException ex) 
             {
-                if (currentMap == 2) 
+                if (mapNumber == 2) 
                 {
                     // no maps to load!
                     return null;
                 }
-                  currentMap = 0;
+                mapNumber = 0;
                 map = null;
             }
         }
 
-        return map;
+        LoadedMap loaded = new LoadedMap();
+        loaded.mapNumber = mapNumber;
+        loaded.map = map;
+        loaded.loadTime = System.nanoTime() - startTime;
+        return loaded;
+    }
+
+
+    /**
+        Starts loading the map after the current map on a
+        background thread.
+    */
+    private void startPreload()
+    {
+        preload = null;
+        if (!preloading) {
+            return;
+        }
+
+        final int afterMap = currentMap;
+        Callable<LoadedMap> load = new Callable<LoadedMap>() {
+            public LoadedMap call() {
+                return loadMapAfter(afterMap);
+            }
+        };
+        FutureTask<LoadedMap> task = new FutureTask<LoadedMap>(load);
+        Thread thread = new Thread(task, "MapPreloader");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        preload = task;
+        preloadAfterMap = afterMap;
+        thread.start();
+    }
+
+
+    /**
+        Takes the preloaded next map, waiting for it if it is
+        still loading. Returns null if there is no usable preload,
+        in which case the caller loads the map itself.
+    */
+    private LoadedMap takePreload()
+    {
+        FutureTask<LoadedMap> task = preload;
+        preload = null;
+        lastHandoffWait = 0;
+        if (task == null || preloadAfterMap != currentMap) {
+            // no preload, or currentMap was changed since
+            return null;
+        }
+
+        long startTime = System.nanoTime();
+        try {
+            return task.get();
+        }
+        catch (Exception ex) {
+            // the preload failed - fall back to a synchronous load
+            return null;
+        }
+        finally {
+            lastHandoffWait = System.nanoTime() - startTime;
+        }
+    }
+
+
+    /**
+        Sets whether the next map is preloaded in the background.
+        Preloading is on by default.
+    */
+    public void setPreloading(boolean preloading) {
+        this.preloading = preloading;
+        if (!preloading) {
+            preload = null;
+        }
+    }
+
+
+    /**
+        Checks if the next map has finished preloading.
+    */
+    public boolean isPreloadReady() {
+        FutureTask<LoadedMap> task = preload;
+        return (task != null && task.isDone());
+    }
+
+
+    /**
+        Gets the time it took to load and instantiate the current
+        map, in nanoseconds, whether it was preloaded or not.
+    */
+    public long getLastLoadTime() {
+        return lastLoadTime;
+    }
+
+
+    /**
+        Gets the time the last call to loadNextMap() spent waiting
+        for the preloaded map, in nanoseconds. This is 0 if the
+        preload was already finished or wasn't used.
+    */
+    public long getLastHandoffWait() {
+        return lastHandoffWait;
     }
 
 
     public TileMap reloadMap() 
     {
         try {
-            return loadMap(
-                "maps/map" + currentMap + ".txt");
+            long startTime = System.nanoTime();
+            TileMap map = loadMap(getMapFile(currentMap), true);
+            lastLoadTime = System.nanoTime() - startTime;
+            return map;
         }
         catch (IOException ex) {
             ex.printStackTrace();
@@ -128,74 +352,177 @@ public class MapLoader
     }
 
 
-    private TileMap loadMap(String filename)
+    /**
+        Gets the file name of a numbered map. The compiled
+        maps/mapN.map is used if it is at least as new as the
+        maps/mapN.txt it was compiled from; otherwise the text
+        map is used.
+    */
+    private String getMapFile(int mapNumber)
+    {
+        String name = "maps/map" + mapNumber;
+        File textFile = new File(name + MapData.TEXT_EXTENSION);
+        File binaryFile = new File(name + MapData.BINARY_EXTENSION);
+        if (binaryFile.exists() &&
+            (!textFile.exists() ||
+            binaryFile.lastModified() >= textFile.lastModified()))
+        {
+            return binaryFile.getPath();
+        }
+        return textFile.getPath();
+    }
+
+
+    /**
+        Loads a map from a text file or a compiled binary map
+        file, based on the file extension. See MapData for the
+        formats.
+    */
+    public TileMap loadMap(String filename)
         throws IOException
     {
-        ArrayList lines = new ArrayList();
-        int width = 0;
-        int height = 0;
-
-        // read every line in the text file into the list
-        BufferedReader reader = new BufferedReader(
-            new FileReader(filename));
-        while (true) {
-            String line = reader.readLine();
-            // no more lines to read
-            if (line == null) {
-                reader.close();
-                break;
-            }
+        return loadMap(filename, false);
+    }
 
-            // add every line except for comments
-            if (!line.startsWith("#")) {
-                lines.add(line);
-                width = Math.max(width, line.length());
-            }
+
+    /**
+        Loads a map, emitting a MapLoad event that says whether
+        the map is being reloaded if the Flight Recorder is
+        running.
+    */
+    private TileMap loadMap(String filename, boolean reload)
+        throws IOException
+    {
+        if (!GameEvents.isRecording()) {
+            return createMap(getMapData(filename, null));
         }
 
-        // parse the lines to create a TileEngine
-        height = lines.size();
-        TileMap newMap = new TileMap(width, height);
-        for (int y=0; y<height; y++) {
-            String line = (String)lines.get(y);
-            for (int x=0; x<line.length(); x++) {
-                char ch = line.charAt(x);
-
-                // check if the char represents tile A, B, C etc.
-                int tile = ch - 'A';
-                if (tile >= 0 && tile < tiles.size()) {
-                    newMap.setTile(x, y, (Image)tiles.get(tile));
-                }
+        GameEvents.MapLoad event = new GameEvents.MapLoad();
+        event.begin();
+        TileMap map = createMap(getMapData(filename, event));
+        event.fileName = filename;
+        event.reload = reload;
+        event.sprites = map.getEntityStore().size();
+        event.commit();
+        return map;
+    }
 
-                // check if the char represents a sprite
-                else if (ch == 'o') {
-                    addSprite(newMap, coinSprite, x, y);
-                }
-                else if (ch == '!') {
-                    addSprite(newMap, musicSprite, x, y);
-                }
-                else if (ch == '*') {
-                    addSprite(newMap, goalSprite, x, y);
-                }
-                else if (ch == '1') {
-                    addSprite(newMap, grubSprite, x, y);
-                }
-                else if (ch == '2') {
-                    addSprite(newMap, flySprite, x, y);
-                }
+
+    /**
+        Gets the parsed map for a file from the template cache,
+        reading and caching it on a miss. Whether the cache was
+        hit and the time spent parsing are set on the event, if
+        there is one.
+    */
+    private synchronized MapData getMapData(String filename,
+        GameEvents.MapLoad event) throws IOException
+    {
+        MapData data = mapCache.get(filename);
+        if (data != null) {
+            cacheHits++;
+            if (event != null) {
+                event.cacheHit = true;
             }
         }
+        else {
+            cacheMisses++;
+            long startTime = System.nanoTime();
+            data = MapData.read(filename);
+            if (event != null) {
+                event.parseTime = System.nanoTime() - startTime;
+            }
+            mapCache.put(filename, data);
+        }
+        return data;
+    }
+
+
+    /**
+        Empties the template cache, so the next load of every map
+        reads its file again.
+    */
+    public synchronized void clearMapCache() {
+        mapCache.clear();
+    }
+
+
+    /**
+        Gets the number of map loads served from the template
+        cache.
+    */
+    public synchronized int getCacheHits() {
+        return cacheHits;
+    }
+
+
+    /**
+        Gets the number of map loads that had to read the map
+        file.
+    */
+    public synchronized int getCacheMisses() {
+        return cacheMisses;
+    }
+
+
+    /**
+        Creates a TileMap from parsed map data, cloning a Sprite
+        for every spawn.
+    */
+    private TileMap createMap(MapData data)
+    {
+        TileMap newMap = new TileMap(data.getWidth(), data.getHeight(),
+            data.getTileIds(), tileImages);
+        newMap.setTileRegions(tileRegions);
+
+        for (int i=0; i<data.getSpawnCount(); i++) {
+            addSprite(newMap, getHostSprite(data.getSpawnType(i)),
+                data.getSpawnX(i), data.getSpawnY(i));
+        }
 
         // add the player to the map
         Sprite player = (Sprite)playerSprite.clone();
         player.setX(TileMapDrawer.tilesToPixels(3));
-        player.setY(lines.size());
+        player.setY(data.getHeight());
         newMap.setPlayer(player);
 
         return newMap;
     }
 
 
+    /**
+        A map loaded by loadMapAfter(), with its number and how
+        long it took to load.
+    */
+    private static class LoadedMap {
+        int mapNumber;
+        TileMap map;
+        long loadTime;
+    }
+
+
+    /**
+        Gets the "host" Sprite for a spawn type, or null if the
+        type is unknown.
+    */
+    private Sprite getHostSprite(char type)
+    {
+        switch (type) {
+            case 'o':
+                return coinSprite;
+            case '!':
+                return musicSprite;
+            case '*':
+                return goalSprite;
+            case '1':
+                return grubSprite;
+            case '2':
+                return flySprite;
+            default:
+                return null;
+        }
+    }
+
+
     private void addSprite(TileMap map,
         Sprite hostSprite, int tileX, int tileY)
     {
@@ -225,11 +552,35 @@ public class MapLoader
     // -----------------------------------------------------------
 
 
-    public void loadTileImages()
+    // the creature images, facing left
+    private static final String[] CREATURE_IMAGES = {
+        "player.png",
+        "fly1.png",
+        "fly2.png",
+        "fly3.png",
+        "grub1.png",
+        "grub2.png",
+    };
+
+    // the power up images
+    private static final String[] POWER_UP_IMAGES = {
+        "heart.png",
+        "coin1.png",
+        "coin2.png",
+        "coin3.png",
+        "coin4.png",
+        "coin5.png",
+        "music1.png",
+        "music2.png",
+        "music3.png",
+    };
+
+
+    private List<Future<Image>> requestTileImages()
     {
         // keep looking for tile A,B,C, etc. this makes it
         // easy to drop new tiles in the images/ directory
-        tiles = new ArrayList();
+        List<Future<Image>> futures = new ArrayList<Future<Image>>();
         char ch = 'A';
         
         while (true) 
@@ -239,40 +590,61 @@ public class MapLoader
             if (!file.exists()) 
                 break;
             
-            tiles.add(loadImage(name));
+            futures.add(assets.load(name));
             ch++;
         }
+        return futures;
+    }
+
+
+    private void loadTileImages(List<Future<Image>> futures)
+    {
+        tiles = new ArrayList<Image>();
+        tileRegions = new AtlasRegion[futures.size()];
+        for (int i=0; i<futures.size(); i++) {
+            Image image = assets.getImage(futures.get(i));
+            tiles.add(image);
+            tileRegions[i] = atlas.add(image);
+        }
+        tileImages = tiles.toArray(new Image[tiles.size()]);
     }
 
 //////////////////////////////////////////////////////////////////////////////////////////////////////////
     
-    public void loadCreatureSprites() 
+    private List<List<Future<Image>>> requestCreatureImages()
     {
+        List<List<Future<Image>>> images =
+            new ArrayList<List<Future<Image>>>();
+        for (int i=0; i<4; i++) {
+            images.add(new ArrayList<Future<Image>>());
+        }
 
-        Image[][] images = new Image[4][];
-
-        // load left-facing images
-        images[0] = new Image[] {
-            loadImage("player.png"),         
-            loadImage("fly1.png"),
-            loadImage("fly2.png"),
-            loadImage("fly3.png"),
-            loadImage("grub1.png"),
-            loadImage("grub2.png"),
-        };
-
-        images[1] = new Image[images[0].length];
-        images[2] = new Image[images[0].length];
-        images[3] = new Image[images[0].length];
-        
-        for (int i=0; i<images[0].length; i++) 
+        for (int i=0; i<CREATURE_IMAGES.length; i++) 
         {
+            String name = CREATURE_IMAGES[i];
+            // left-facing images
+            Future<Image> image = assets.load(name);
+            images.get(0).add(image);
             // right-facing images
-            images[1][i] = getMirrorImage(images[0][i]);
+            images.get(1).add(assets.mirror(name, image));
             // left-facing "dead" images
-            images[2][i] = getFlippedImage(images[0][i]);
+            images.get(2).add(assets.flip(name, image));
             // right-facing "dead" images
-            images[3][i] = getFlippedImage(images[1][i]);
+            images.get(3).add(assets.mirrorFlip(name, image));
+        }
+        return images;
+    }
+
+
+    private void loadCreatureSprites(List<List<Future<Image>>> futures) 
+    {
+        AtlasRegion[][] images =
+            new AtlasRegion[4][futures.get(0).size()];
+        for (int i=0; i<4; i++) {
+            for (int j=0; j<futures.get(i).size(); j++) {
+                images[i][j] = atlas.add(
+                    assets.getImage(futures.get(i).get(j)));
+            }
         }
 
         // create creature animations
@@ -294,7 +666,7 @@ public class MapLoader
     }
 
 
-    private Animation createPlayerAnim(Image player)
+    private Animation createPlayerAnim(AtlasRegion player)
     {
         Animation anim = new Animation();
         anim.addFrame(player, 250);
@@ -303,7 +675,8 @@ public class MapLoader
     }
 
 
-    private Animation createFlyAnim(Image img1, Image img2, Image img3)
+    private Animation createFlyAnim(AtlasRegion img1, AtlasRegion img2,
+        AtlasRegion img3)
     {
         Animation anim = new Animation();
         anim.addFrame(img1, 50);
@@ -314,7 +687,7 @@ public class MapLoader
     }
 
 
-    private Animation createGrubAnim(Image img1, Image img2)
+    private Animation createGrubAnim(AtlasRegion img1, AtlasRegion img2)
     {
         Animation anim = new Animation();
         anim.addFrame(img1, 250);
@@ -323,30 +696,44 @@ public class MapLoader
     }
 
 
-    private void loadPowerUpSprites() 
+    private List<Future<Image>> requestPowerUpImages()
     {
+        List<Future<Image>> images = new ArrayList<Future<Image>>();
+        for (int i=0; i<POWER_UP_IMAGES.length; i++) {
+            images.add(assets.load(POWER_UP_IMAGES[i]));
+        }
+        return images;
+    }
+
+
+    private void loadPowerUpSprites(List<Future<Image>> futures) 
+    {
+        AtlasRegion[] images = new AtlasRegion[futures.size()];
+        for (int i=0; i<futures.size(); i++) {
+            images[i] = atlas.add(assets.getImage(futures.get(i)));
+        }
+
         // create "goal" sprite
         Animation anim = new Animation();
-        anim.addFrame(loadImage("heart.png"), 150);
+        anim.addFrame(images[0], 150);
         goalSprite = new PowerUp.Goal(anim);
 
         // create "star" sprite
         anim = new Animation();
-        anim.addFrame(loadImage("coin1.png"),250 ) ;  
-        anim.addFrame(loadImage("coin2.png"),250);
-        anim.addFrame(loadImage("coin3.png"),250);
-        anim.addFrame(loadImage("coin4.png"),250);
-        anim.addFrame(loadImage("coin5.png"),250);
+        anim.addFrame(images[1],250 ) ;  
+        anim.addFrame(images[2],250);
+        anim.addFrame(images[3],250);
+        anim.addFrame(images[4],250);
+        anim.addFrame(images[5],250);
         coinSprite = new PowerUp.Star(anim);
 
         // create "music" sprite
         anim = new Animation();
-        anim.addFrame(loadImage("music1.png"), 150);
-        anim.addFrame(loadImage("music2.png"), 150);
-        anim.addFrame(loadImage("music3.png"), 150);
-        anim.addFrame(loadImage("music2.png"), 150);
+        anim.addFrame(images[6], 150);
+        anim.addFrame(images[7], 150);
+        anim.addFrame(images[8], 150);
+        anim.addFrame(images[7], 150);
         musicSprite = new PowerUp.Music(anim);
-        musicSprite=new PowerUp.Music(anim);
     }
 
 }
@@ -0,0 +1,276 @@
+package com.TETOSOFT.tilegame;
+
+import java.util.ArrayList;
+
+import com.TETOSOFT.graphics.Sprite;
+
+/**
+    The SpriteGrid class is a uniform grid laid over a TileMap.
+    Each Sprite is kept in the cell that holds its top-left
+    corner, so a collision query only has to look at the Sprites
+    in the cells around it instead of every Sprite in the map.
+    The grid columns also give an index of Sprites ordered by x,
+    used to find the Sprites near the screen.
+
+    <p>Sprites must be re-filed with update() after they move.
+    Positions outside the map are clamped to the edge cells.
+
+    <p>Each cell is a linked list of entries, one entry per
+    Sprite, so moving a Sprite between cells never allocates.
+    Entries are found by the id of the Sprite's EntityStore
+    handle, so a Sprite must be in an EntityStore to be added.
+*/
+public class SpriteGrid {
+
+    // the width and height of a cell, in tiles
+    private static final int CELL_TILES = 2;
+
+    private int numCols;
+    private int numRows;
+    private Entry[] cells;
+
+    // the entry of each Sprite, by handle id
+    private Entry[] entries;
+    private int numEntries;
+
+    // the biggest Sprite seen, used to widen queries
+    private int maxWidth;
+    private int maxHeight;
+
+    private int queryCount;
+    private int candidateCount;
+
+    /**
+        Creates a new SpriteGrid covering a map of the specified
+        width and height (in number of tiles).
+    */
+    public SpriteGrid(int width, int height) {
+        numCols = Math.max(1, (width + CELL_TILES - 1) / CELL_TILES);
+        numRows = Math.max(1, (height + CELL_TILES - 1) / CELL_TILES);
+        cells = new Entry[numCols * numRows];
+        entries = new Entry[16];
+    }
+
+
+    /**
+        Adds a Sprite to the cell at its current position.
+    */
+    public void add(Sprite sprite) {
+        int id = EntityStore.getId(sprite.getHandle());
+        if (sprite.getHandle() == Sprite.NO_HANDLE) {
+            throw new IllegalArgumentException("Sprite has no handle");
+        }
+        if (id >= entries.length) {
+            Entry[] newEntries = new Entry[Math.max(id + 1,
+                entries.length * 2)];
+            System.arraycopy(entries, 0, newEntries, 0, entries.length);
+            entries = newEntries;
+        }
+        Entry entry = new Entry();
+        entry.sprite = sprite;
+        entries[id] = entry;
+        numEntries++;
+        link(entry, getCellIndex(sprite.getX(), sprite.getY()));
+        growMaxSize(sprite);
+    }
+
+
+    /**
+        Removes a Sprite from the grid.
+    */
+    public void remove(Sprite sprite) {
+        Entry entry = getEntry(sprite);
+        if (entry != null) {
+            unlink(entry);
+            entries[EntityStore.getId(sprite.getHandle())] = null;
+            numEntries--;
+        }
+    }
+
+
+    /**
+        Moves a Sprite to the cell at its current position, if it
+        has left its old cell.
+    */
+    public void update(Sprite sprite) {
+        Entry entry = getEntry(sprite);
+        if (entry == null) {
+            return;
+        }
+        int newIndex = getCellIndex(sprite.getX(), sprite.getY());
+        if (newIndex != entry.cell) {
+            unlink(entry);
+            link(entry, newIndex);
+        }
+        growMaxSize(sprite);
+    }
+
+
+    /**
+        Fills the list with every Sprite that could overlap the
+        specified Sprite, that is, every Sprite in the cells the
+        Sprite covers plus enough cells up and to the left to
+        catch the biggest Sprite in the grid. The list is cleared
+        first.
+    */
+    public void getNearbySprites(Sprite sprite, ArrayList<Sprite> result) {
+        prepareResult(result);
+        queryCount++;
+
+        float x = sprite.getX();
+        float y = sprite.getY();
+        int fromCol = getCol(x - maxWidth);
+        int fromRow = getRow(y - maxHeight);
+        int toCol = getCol(x + sprite.getWidth());
+        int toRow = getRow(y + sprite.getHeight());
+
+        for (int col=fromCol; col<=toCol; col++) {
+            for (int row=fromRow; row<=toRow; row++) {
+                addCell(cells[row * numCols + col], result);
+            }
+        }
+        candidateCount += result.size();
+    }
+
+
+    /**
+        Fills the list with every Sprite whose left edge could be
+        between left and right, in order of grid column. Sprites
+        are included if they might reach into the range, so some
+        Sprites just outside it may be included too. The list is
+        cleared first.
+    */
+    public void getSpritesBetween(float left, float right,
+        ArrayList<Sprite> result)
+    {
+        prepareResult(result);
+        int fromCol = getCol(left - maxWidth);
+        int toCol = getCol(right);
+        for (int col=fromCol; col<=toCol; col++) {
+            for (int row=0; row<numRows; row++) {
+                addCell(cells[row * numCols + col], result);
+            }
+        }
+    }
+
+
+    /**
+        Gets the number of queries made since the last call to
+        resetCounters().
+    */
+    public int getQueryCount() {
+        return queryCount;
+    }
+
+
+    /**
+        Gets the number of Sprites returned by queries since the
+        last call to resetCounters().
+    */
+    public int getCandidateCount() {
+        return candidateCount;
+    }
+
+
+    /**
+        Resets the query counters. The GameEngine calls this at
+        the start of every tick.
+    */
+    public void resetCounters() {
+        queryCount = 0;
+        candidateCount = 0;
+    }
+
+
+    private int getCol(float x) {
+        int col = TileMapDrawer.pixelsToTiles(x) / CELL_TILES;
+        return Math.max(0, Math.min(col, numCols - 1));
+    }
+
+
+    private int getRow(float y) {
+        int row = TileMapDrawer.pixelsToTiles(y) / CELL_TILES;
+        return Math.max(0, Math.min(row, numRows - 1));
+    }
+
+
+    private int getCellIndex(float x, float y) {
+        return getRow(y) * numCols + getCol(x);
+    }
+
+
+    private void prepareResult(ArrayList<Sprite> result) {
+        // make room for every Sprite up front, so a query list
+        // that is reused never has to grow during a game
+        result.clear();
+        result.ensureCapacity(numEntries);
+    }
+
+
+    private Entry getEntry(Sprite sprite) {
+        int handle = sprite.getHandle();
+        if (handle == Sprite.NO_HANDLE) {
+            return null;
+        }
+        int id = EntityStore.getId(handle);
+        if (id >= entries.length || entries[id] == null ||
+            entries[id].sprite != sprite)
+        {
+            return null;
+        }
+        return entries[id];
+    }
+
+
+    private void addCell(Entry entry, ArrayList<Sprite> result) {
+        while (entry != null) {
+            result.add(entry.sprite);
+            entry = entry.next;
+        }
+    }
+
+
+    private void link(Entry entry, int index) {
+        entry.cell = index;
+        entry.prev = null;
+        entry.next = cells[index];
+        if (entry.next != null) {
+            entry.next.prev = entry;
+        }
+        cells[index] = entry;
+    }
+
+
+    private void unlink(Entry entry) {
+        if (entry.prev != null) {
+            entry.prev.next = entry.next;
+        }
+        else {
+            cells[entry.cell] = entry.next;
+        }
+        if (entry.next != null) {
+            entry.next.prev = entry.prev;
+        }
+        entry.prev = null;
+        entry.next = null;
+    }
+
+
+    private void growMaxSize(Sprite sprite) {
+        maxWidth = Math.max(maxWidth, sprite.getWidth());
+        maxHeight = Math.max(maxHeight, sprite.getHeight());
+    }
+
+
+
+    /**
+        A Sprite's place in a cell list.
+    */
+    private static class Entry {
+        Sprite sprite;
+        int cell;
+        Entry prev;
+        Entry next;
+    }
+
+}
@@ -1,21 +1,43 @@
 package com.TETOSOFT.tilegame;
 
 import java.awt.Image;
-import java.util.LinkedList;
+import java.awt.Point;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 
+import com.TETOSOFT.graphics.AtlasRegion;
 import com.TETOSOFT.graphics.Sprite;
 
 /**
     The TileMap class contains the data for a tile-based
-    map, including Sprites. Each tile is a reference to an
-    Image. Of course, Images are used multiple times in the tile
-    map.
+    map, including Sprites. Each tile is stored as a one byte
+    tile id in a single row-major array. The id indexes a palette
+    of tile Images, and id 0 means there is no tile. The palette
+    can also give a texture atlas region for each id, so the tiles
+    are drawn from one atlas page.
+
+    <p>Every non-zero tile is solid. Solidity is also kept as a
+    packed bitmask per row, 64 tiles to a word, so collision
+    queries can test many tiles at once.
 */
 public class TileMap {
 
-    private Image[][] tiles;
-    private LinkedList sprites;
+    /**
+        The number of tile Images a palette can hold.
+    */
+    public static final int MAX_TILE_IMAGES = 255;
+
+    private int width;
+    private int height;
+    private byte[] tileIds;
+    private Image[] palette;
+    private AtlasRegion[] regionPalette;
+    private int paletteSize;
+    private long[] solidBits;
+    private int wordsPerRow;
+    private int[] columnRevisions;
+    private EntityStore sprites;
+    private SpriteGrid spriteGrid;
     private Sprite player;
 
     /**
@@ -23,8 +45,60 @@ public class TileMap {
         height (in number of tiles) of the map.
     */
     public TileMap(int width, int height) {
-        tiles = new Image[width][height];
-        sprites = new LinkedList();
+        this(width, height, new Image[0]);
+    }
+
+
+    /**
+        Creates a new TileMap with the specified width and
+        height (in number of tiles) of the map, and a palette of
+        tile Images. The Image at index i gets tile id i + 1.
+    */
+    public TileMap(int width, int height, Image[] tileImages) {
+        if (tileImages.length > MAX_TILE_IMAGES) {
+            throw new IllegalArgumentException(
+                "Too many tile images: " + tileImages.length);
+        }
+        this.width = width;
+        this.height = height;
+        tileIds = new byte[width * height];
+        wordsPerRow = (width + 63) >> 6;
+        solidBits = new long[wordsPerRow * height];
+        columnRevisions = new int[width];
+        palette = new Image[MAX_TILE_IMAGES + 1];
+        regionPalette = new AtlasRegion[MAX_TILE_IMAGES + 1];
+        System.arraycopy(tileImages, 0, palette, 1, tileImages.length);
+        paletteSize = tileImages.length + 1;
+        sprites = new EntityStore();
+        spriteGrid = new SpriteGrid(width, height);
+    }
+
+
+    /**
+        Creates a new TileMap with the specified width and
+        height (in number of tiles) of the map, filled from a
+        row-by-row array of tile ids. Ids with no Image in the
+        palette are left empty.
+    */
+    public TileMap(int width, int height, byte[] tileIds,
+        Image[] tileImages)
+    {
+        this(width, height, tileImages);
+        System.arraycopy(tileIds, 0, this.tileIds, 0, width * height);
+
+        // build the solid bitmask, dropping unknown ids
+        for (int y=0; y<height; y++) {
+            int rowStart = y * width;
+            for (int x=0; x<width; x++) {
+                int id = this.tileIds[rowStart + x] & 0xff;
+                if (id >= paletteSize) {
+                    this.tileIds[rowStart + x] = 0;
+                }
+                else if (id != 0) {
+                    solidBits[y * wordsPerRow + (x >> 6)] |= 1L << x;
+                }
+            }
+        }
     }
 
 
@@ -32,7 +106,7 @@ public class TileMap {
         Gets the width of this TileMap (number of tiles across).
     */
     public int getWidth() {
-        return tiles.length;
+        return width;
     }
 
 
@@ -40,24 +114,328 @@ public class TileMap {
         Gets the height of this TileMap (number of tiles down).
     */
     public int getHeight() {
-        return tiles[0].length;
+        return height;
     }
 
 
     /**
-        Gets the tile at the specified location. Returns null if
-        no tile is at the location or if the location is out of
-        bounds.
+        Gets the id of the tile at the specified location.
+        Returns 0 if no tile is at the location or if the
+        location is out of bounds.
     */
-    public Image getTile(int x, int y) {
-        if (x < 0 || x >= getWidth() ||
-            y < 0 || y >= getHeight())
+    public int getTileId(int x, int y) {
+        if (x < 0 || x >= width ||
+            y < 0 || y >= height)
         {
-            return null;
+            return 0;
+        }
+        else {
+            return tileIds[y * width + x] & 0xff;
+        }
+    }
+
+
+    /**
+        Sets the id of the tile at the specified location. Use
+        id 0 to clear the tile.
+    */
+    public void setTileId(int x, int y, int id) {
+        if (id < 0 || id >= paletteSize) {
+            throw new IllegalArgumentException("No tile image for id " + id);
+        }
+        tileIds[y * width + x] = (byte)id;
+        columnRevisions[x]++;
+
+        // keep the solid bitmask in step
+        int word = y * wordsPerRow + (x >> 6);
+        if (id != 0) {
+            solidBits[word] |= 1L << x;
         }
         else {
-            return tiles[x][y];
+            solidBits[word] &= ~(1L << x);
+        }
+    }
+
+
+    /**
+        Gets the revision of a column of tiles. It goes up every
+        time a tile in the column is set, so drawing code can tell
+        when cached tile images are stale.
+    */
+    public int getColumnRevision(int x) {
+        return columnRevisions[x];
+    }
+
+
+    /**
+        Checks if the tile at the specified location is solid.
+        Locations out of bounds are not solid.
+    */
+    public boolean isSolid(int x, int y) {
+        if (x < 0 || x >= width ||
+            y < 0 || y >= height)
+        {
+            return false;
         }
+        return (solidBits[y * wordsPerRow + (x >> 6)] & (1L << x)) != 0;
+    }
+
+
+    /**
+        Finds the first solid tile in the box of tiles from
+        (fromX, fromY) to (toX, toY), scanning columns from left
+        to right and each column from top to bottom. Columns left
+        or right of the map count as solid; rows above or below
+        it don't. Sets result to the tile location and returns
+        true, or returns false if there is no solid tile.
+    */
+    public boolean findSolidTile(int fromX, int fromY, int toX, int toY,
+        Point result)
+    {
+        if (fromX > toX || fromY > toY) {
+            return false;
+        }
+
+        // off the left edge of the map
+        if (fromX < 0) {
+            result.setLocation(fromX, fromY);
+            return true;
+        }
+
+        // find the leftmost solid tile, a row at a time
+        int lastX = Math.min(toX, width - 1);
+        int firstY = Math.max(fromY, 0);
+        int lastY = Math.min(toY, height - 1);
+        int foundX = lastX + 1;
+        int foundY = 0;
+        for (int y=firstY; y<=lastY && fromX<foundX; y++) {
+            int x = findSolidInRow(y, fromX, foundX - 1);
+            if (x >= 0) {
+                foundX = x;
+                foundY = y;
+            }
+        }
+        if (foundX <= lastX) {
+            result.setLocation(foundX, foundY);
+            return true;
+        }
+
+        // off the right edge of the map
+        if (toX >= width) {
+            result.setLocation(Math.max(fromX, width), fromY);
+            return true;
+        }
+
+        return false;
+    }
+
+
+    /**
+        Finds the solid tile nearest to column fromX in the box of
+        tiles between columns fromX and toX and rows fromY to toY,
+        scanning the columns from fromX toward toX, which may be
+        left of fromX. Of the solid tiles in the nearest column,
+        the top one is found. Columns left or right of the map
+        count as solid; rows above or below it don't. Sets result
+        to the tile location and returns true, or returns false if
+        there is no solid tile.
+    */
+    public boolean findSolidColumn(int fromX, int toX, int fromY, int toY,
+        Point result)
+    {
+        if (fromX <= toX) {
+            return findSolidTile(fromX, fromY, toX, toY, result);
+        }
+        if (fromY > toY) {
+            return false;
+        }
+
+        // off the right edge of the map
+        if (fromX >= width) {
+            result.setLocation(fromX, fromY);
+            return true;
+        }
+
+        // find the rightmost solid tile, a row at a time
+        int firstX = Math.max(toX, 0);
+        int firstY = Math.max(fromY, 0);
+        int lastY = Math.min(toY, height - 1);
+        int foundX = firstX - 1;
+        int foundY = 0;
+        for (int y=firstY; y<=lastY && foundX<fromX; y++) {
+            int x = findLastSolidInRow(y, foundX + 1, fromX);
+            if (x >= 0) {
+                foundX = x;
+                foundY = y;
+            }
+        }
+        if (foundX >= firstX) {
+            result.setLocation(foundX, foundY);
+            return true;
+        }
+
+        // off the left edge of the map
+        if (toX < 0) {
+            result.setLocation(Math.min(fromX, -1), fromY);
+            return true;
+        }
+
+        return false;
+    }
+
+
+    /**
+        Finds the solid tile nearest to row fromY in the box of
+        tiles between rows fromY and toY and columns fromX to toX,
+        scanning the rows from fromY toward toY, which may be above
+        fromY. Of the solid tiles in the nearest row, the leftmost
+        is found. Columns left or right of the map count as solid;
+        rows above or below it don't. Sets result to the tile
+        location and returns true, or returns false if there is no
+        solid tile.
+    */
+    public boolean findSolidRow(int fromY, int toY, int fromX, int toX,
+        Point result)
+    {
+        if (fromX > toX) {
+            return false;
+        }
+
+        // every row is solid past the edges of the map
+        if (fromX < 0 || toX >= width) {
+            return findSolidTile(fromX, fromY, toX, fromY, result);
+        }
+
+        // rows outside the map are empty
+        int step = (fromY <= toY) ? 1 : -1;
+        int firstY = (step > 0) ? Math.max(fromY, 0) :
+            Math.min(fromY, height - 1);
+        int lastY = (step > 0) ? Math.min(toY, height - 1) :
+            Math.max(toY, 0);
+        for (int y=firstY; (y - lastY) * step <= 0; y+=step) {
+            int x = findSolidInRow(y, fromX, toX);
+            if (x >= 0) {
+                result.setLocation(x, y);
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    /**
+        Gets the leftmost solid tile from fromX to toX in the
+        specified row, or -1 if there is none. The range must be
+        inside the map.
+    */
+    private int findSolidInRow(int y, int fromX, int toX) {
+        int rowStart = y * wordsPerRow;
+        int w = fromX >> 6;
+        int lastW = toX >> 6;
+        long word = solidBits[rowStart + w] & (-1L << fromX);
+        while (true) {
+            if (w == lastW) {
+                word &= -1L >>> (63 - (toX & 63));
+            }
+            if (word != 0) {
+                return (w << 6) + Long.numberOfTrailingZeros(word);
+            }
+            if (w == lastW) {
+                return -1;
+            }
+            w++;
+            word = solidBits[rowStart + w];
+        }
+    }
+
+
+    /**
+        Gets the rightmost solid tile from fromX to toX in the
+        specified row, or -1 if there is none. The range must be
+        inside the map.
+    */
+    private int findLastSolidInRow(int y, int fromX, int toX) {
+        int rowStart = y * wordsPerRow;
+        int firstW = fromX >> 6;
+        int w = toX >> 6;
+        long word = solidBits[rowStart + w] & (-1L >>> (63 - (toX & 63)));
+        while (true) {
+            if (w == firstW) {
+                word &= -1L << fromX;
+            }
+            if (word != 0) {
+                return (w << 6) + 63 - Long.numberOfLeadingZeros(word);
+            }
+            if (w == firstW) {
+                return -1;
+            }
+            w--;
+            word = solidBits[rowStart + w];
+        }
+    }
+
+
+    /**
+        Gets the Image for the specified tile id, or null for
+        id 0.
+    */
+    public Image getTileImage(int id) {
+        return palette[id];
+    }
+
+
+    /**
+        Gets the atlas region for the specified tile id, or null
+        if the tile isn't in an atlas.
+    */
+    public AtlasRegion getTileRegion(int id) {
+        return regionPalette[id];
+    }
+
+
+    /**
+        Sets the atlas regions of the tiles in the palette. The
+        region at index i is for tile id i + 1, and should hold the
+        same picture as that tile's Image.
+    */
+    public void setTileRegions(AtlasRegion[] tileRegions) {
+        if (tileRegions.length >= paletteSize) {
+            throw new IllegalArgumentException(
+                "More regions than tile images: " + tileRegions.length);
+        }
+        System.arraycopy(tileRegions, 0, regionPalette, 1,
+            tileRegions.length);
+    }
+
+
+    /**
+        Gets the id of a tile Image, adding the Image to the
+        palette if it isn't in it yet. Returns 0 for null.
+    */
+    public int getTileImageId(Image image) {
+        if (image == null) {
+            return 0;
+        }
+        for (int id=1; id<paletteSize; id++) {
+            if (palette[id] == image) {
+                return id;
+            }
+        }
+        if (paletteSize > MAX_TILE_IMAGES) {
+            throw new IllegalStateException("Tile palette is full");
+        }
+        palette[paletteSize] = image;
+        return paletteSize++;
+    }
+
+
+    /**
+        Gets the tile at the specified location. Returns null if
+        no tile is at the location or if the location is out of
+        bounds.
+    */
+    public Image getTile(int x, int y) {
+        return palette[getTileId(x, y)];
     }
 
 
@@ -65,7 +443,7 @@ public class TileMap {
         Sets the tile at the specified location.
     */
     public void setTile(int x, int y, Image tile) {
-        tiles[x][y] = tile;
+        setTileId(x, y, getTileImageId(tile));
     }
 
 
@@ -90,23 +468,104 @@ public class TileMap {
     */
     public void addSprite(Sprite sprite) {
         sprites.add(sprite);
+        spriteGrid.add(sprite);
     }
 
 
     /**
-        Removes a Sprite object from this map.
+        Removes a Sprite object from this map. The Sprite leaves
+        the SpriteGrid (and so collisions and drawing) right away,
+        but stays in the EntityStore until applyRemovals() is
+        called at the end of the tick.
     */
     public void removeSprite(Sprite sprite) {
+        spriteGrid.remove(sprite);
         sprites.remove(sprite);
     }
 
 
+    /**
+        Finishes removing the Sprites removed since the last call.
+    */
+    public void applyRemovals() {
+        sprites.applyRemovals();
+    }
+
+
+    /**
+        Moves a Sprite to the right SpriteGrid cell after its
+        position has changed.
+    */
+    public void updateSprite(Sprite sprite) {
+        spriteGrid.update(sprite);
+    }
+
+
+    /**
+        Gets the SpriteGrid that indexes the Sprites in this map
+        (excluding the player Sprite) by position.
+    */
+    public SpriteGrid getSpriteGrid() {
+        return spriteGrid;
+    }
+
+
+    /**
+        Gets the EntityStore holding the Sprites in this map
+        (excluding the player Sprite), for indexed loops.
+    */
+    public EntityStore getEntityStore() {
+        return sprites;
+    }
+
+
     /**
         Gets an Iterator of all the Sprites in this map,
-        excluding the player Sprite.
+        excluding the player Sprite and Sprites that have been
+        removed.
     */
     public Iterator getSprites() {
-        return sprites.iterator();
+        return new SpriteIterator();
+    }
+
+
+    /**
+        Iterates over the EntityStore, skipping removed Sprites.
+    */
+    private class SpriteIterator implements Iterator {
+
+        private int index = -1;
+        private int nextIndex = findNext(0);
+
+        private int findNext(int i) {
+            while (i < sprites.size() &&
+                sprites.isRemoving(sprites.getSprite(i)))
+            {
+                i++;
+            }
+            return i;
+        }
+
+        public boolean hasNext() {
+            return nextIndex < sprites.size();
+        }
+
+        public Object next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            index = nextIndex;
+            nextIndex = findNext(index + 1);
+            return sprites.getSprite(index);
+        }
+
+        public void remove() {
+            if (index == -1) {
+                throw new IllegalStateException();
+            }
+            removeSprite(sprites.getSprite(index));
+            index = -1;
+        }
     }
 
 }
@@ -1,10 +1,10 @@
 package com.TETOSOFT.tilegame;
 
 import java.awt.*;
-import java.util.Iterator;
+import java.util.ArrayList;
 
+import com.TETOSOFT.graphics.AtlasRegion;
 import com.TETOSOFT.graphics.Sprite;
-import com.TETOSOFT.tilegame.sprites.Creature;
 
 /**
     The TileMapRenderer class draws a TileMap on the screen.
@@ -18,6 +18,17 @@ import com.TETOSOFT.tilegame.sprites.Creature;
     <p>Also, three static methods are provided to convert pixels
     to tile positions, and vice-versa.
 
+    <p>The tiles never move, so the tile layer is pre-rendered
+    into chunk images CHUNK_TILES tiles wide and as tall as the
+    map. Each frame draws only the chunks that cover the screen,
+    and a chunk is rendered again only when a tile in it changes.
+    This pays off when images are drawn by the graphics hardware.
+    With software-only rendering, such as headless, drawing the
+    tiles one by one can be faster; see setTileCaching().
+
+    <p>Only the Sprites near the screen are drawn, found through
+    the SpriteGrid of the map.
+
     <p>This TileMapRender uses a tile size of 64.
 */
 public class TileMapDrawer 
@@ -28,7 +39,22 @@ public class TileMapDrawer
     // Math.pow(2, TILE_SIZE_BITS) == TILE_SIZE
     private static final int TILE_SIZE_BITS = 6;
 
+    // the width of a pre-rendered chunk of tiles, in tiles
+    private static final int CHUNK_TILES = 16;
+
+    // the most chunk images kept at once
+    private static final int MAX_CACHED_CHUNKS = 8;
+
     private Image background;
+    private boolean tileCaching = true;
+    private ArrayList<Sprite> visibleSprites = new ArrayList<Sprite>();
+
+    // pre-rendered chunks of the tile layer of chunkMap
+    private TileMap chunkMap;
+    private Image[] chunks;
+    private int[] chunkRevisions;
+    private int[] cachedChunks = new int[MAX_CACHED_CHUNKS];
+    private int numCachedChunks;
 
     /**
         Converts a pixel position to a tile position.
@@ -65,6 +91,24 @@ public class TileMapDrawer
     }
 
 
+    /**
+        Gets the horizontal scrolling offset for a map, which
+        keeps the player near the middle of the screen without
+        scrolling past either end of the map. The visible part
+        of the map starts at pixel -offsetX.
+    */
+    public static int getOffsetX(TileMap map, int screenWidth,
+        float playerX)
+    {
+        int mapWidth = tilesToPixels(map.getWidth());
+        int offsetX = screenWidth / 2 -
+            Math.round(playerX) - TILE_SIZE;
+        offsetX = Math.min(offsetX, 0);
+        offsetX = Math.max(offsetX, screenWidth - mapWidth);
+        return offsetX;
+    }
+
+
     /**
         Sets the background to draw.
     */
@@ -73,21 +117,48 @@ public class TileMapDrawer
     }
 
 
+    /**
+        Sets whether the tile layer is drawn from pre-rendered
+        chunk images (the default) or tile by tile.
+    */
+    public void setTileCaching(boolean tileCaching) {
+        this.tileCaching = tileCaching;
+        if (!tileCaching && chunkMap != null) {
+            for (int i=0; i<numCachedChunks; i++) {
+                chunks[cachedChunks[i]].flush();
+            }
+            numCachedChunks = 0;
+            chunkMap = null;
+            chunks = null;
+        }
+    }
+
+
     /**
         Draws the specified TileMap.
     */
     public void draw(Graphics2D g, TileMap map,
         int screenWidth, int screenHeight)
+    {
+        draw(g, map, screenWidth, screenHeight, 1);
+    }
+
+
+    /**
+        Draws the specified TileMap, placing Sprites between
+        their previous and current positions according to alpha
+        (0 is the previous tick, 1 is the current tick).
+    */
+    public void draw(Graphics2D g, TileMap map,
+        int screenWidth, int screenHeight, float alpha)
     {
         Sprite player = map.getPlayer();
         int mapWidth = tilesToPixels(map.getWidth());
 
         // get the scrolling position of the map
         // based on player's position
-        int offsetX = screenWidth / 2 -
-            Math.round(player.getX()) - TILE_SIZE;
-        offsetX = Math.min(offsetX, 0);
-        offsetX = Math.max(offsetX, screenWidth - mapWidth);
+        int offsetX = getOffsetX(map, screenWidth,
+            player.getInterpolatedX(alpha));
 
         // get the y offset to draw all sprites and tiles
         int offsetY = screenHeight -
@@ -113,42 +184,173 @@ public class TileMapDrawer
         }
 
         // draw the visible tiles
-        int firstTileX = pixelsToTiles(-offsetX);
-        int lastTileX = firstTileX +
-            pixelsToTiles(screenWidth) + 1;
-        for (int y=0; y<map.getHeight(); y++) {
-            for (int x=firstTileX; x <= lastTileX; x++) {
-                Image image = map.getTile(x, y);
-                if (image != null) {
-                    g.drawImage(image,
-                        tilesToPixels(x) + offsetX,
-                        tilesToPixels(y) + offsetY,
-                        null);
+        int firstTileX = Math.max(pixelsToTiles(-offsetX), 0);
+        int lastTileX = Math.min(firstTileX +
+            pixelsToTiles(screenWidth) + 1, map.getWidth() - 1);
+        if (tileCaching) {
+            // draw the chunks of tiles that cover the screen
+            if (chunkMap != map) {
+                resetChunks(map);
+            }
+            for (int c = firstTileX / CHUNK_TILES;
+                c <= lastTileX / CHUNK_TILES; c++)
+            {
+                g.drawImage(getChunk(g, c),
+                    tilesToPixels(c * CHUNK_TILES) + offsetX,
+                    offsetY,
+                    null);
+            }
+        }
+        else {
+            // draw the tiles in the rows on screen one by one
+            int firstTileY = Math.max(pixelsToTiles(-offsetY) - 1, 0);
+            int lastTileY = Math.min(
+                pixelsToTiles(screenHeight - offsetY),
+                map.getHeight() - 1);
+            for (int y=firstTileY; y<=lastTileY; y++) {
+                for (int x=firstTileX; x<=lastTileX; x++) {
+                    int id = map.getTileId(x, y);
+                    if (id != 0) {
+                        drawTile(g, map, id,
+                            tilesToPixels(x) + offsetX,
+                            tilesToPixels(y) + offsetY);
+                    }
                 }
             }
         }
 
         // draw player
-        g.drawImage(player.getImage(),
-            Math.round(player.getX()) + offsetX,
-            Math.round(player.getY()) + offsetY,
-            null);
-
-        // draw sprites
-        Iterator i = map.getSprites();
-        while (i.hasNext()) {
-            Sprite sprite = (Sprite)i.next();
-            int x = Math.round(sprite.getX()) + offsetX;
-            int y = Math.round(sprite.getY()) + offsetY;
-            g.drawImage(sprite.getImage(), x, y, null);
-
-            // wake up the creature when it's on screen
-            if (sprite instanceof Creature &&
-                x >= 0 && x < screenWidth)
+        player.draw(g,
+            Math.round(player.getInterpolatedX(alpha)) + offsetX,
+            Math.round(player.getInterpolatedY(alpha)) + offsetY);
+
+        // draw the sprites near the screen
+        map.getSpriteGrid().getSpritesBetween(-offsetX,
+            -offsetX + screenWidth, visibleSprites);
+        for (int i=0; i<visibleSprites.size(); i++) {
+            Sprite sprite = visibleSprites.get(i);
+            int x = Math.round(sprite.getInterpolatedX(alpha)) + offsetX;
+            int y = Math.round(sprite.getInterpolatedY(alpha)) + offsetY;
+            sprite.draw(g, x, y);
+        }
+    }
+
+
+    /**
+        Draws a tile, from its atlas region if it has one.
+    */
+    private void drawTile(Graphics2D g, TileMap map, int id, int x, int y) {
+        AtlasRegion region = map.getTileRegion(id);
+        if (region != null) {
+            region.draw(g, x, y);
+        }
+        else {
+            g.drawImage(map.getTileImage(id), x, y, null);
+        }
+    }
+
+
+
+    /**
+        Forgets the chunks of the previous map and starts caching
+        chunks for the specified map.
+    */
+    private void resetChunks(TileMap map) {
+        int numChunks = (map.getWidth() + CHUNK_TILES - 1) / CHUNK_TILES;
+        Image[] oldChunks = chunks;
+        chunks = new Image[numChunks];
+        chunkRevisions = new int[numChunks];
+
+        // keep the chunk images around to draw the new map into,
+        // up to the first one that doesn't fit, and flush the rest
+        int numKept = 0;
+        for (int i=0; i<numCachedChunks; i++) {
+            Image image = oldChunks[cachedChunks[i]];
+            if (numKept == i && i < numChunks &&
+                image.getHeight(null) == tilesToPixels(map.getHeight()))
+            {
+                chunks[i] = image;
+                chunkRevisions[i] = -1;
+                cachedChunks[i] = i;
+                numKept++;
+            }
+            else {
+                image.flush();
+            }
+        }
+        numCachedChunks = numKept;
+        chunkMap = map;
+    }
+
+
+    /**
+        Gets the image of a chunk of the tile layer, rendering it
+        if it isn't cached or if its tiles have changed.
+    */
+    private Image getChunk(Graphics2D g, int chunk) {
+        int firstX = chunk * CHUNK_TILES;
+        int lastX = Math.min(firstX + CHUNK_TILES, chunkMap.getWidth()) - 1;
+        int revision = 0;
+        for (int x=firstX; x<=lastX; x++) {
+            revision += chunkMap.getColumnRevision(x);
+        }
+
+        if (chunks[chunk] == null) {
+            chunks[chunk] = allocateChunk(g, chunk);
+        }
+        else if (chunkRevisions[chunk] == revision) {
+            return chunks[chunk];
+        }
+
+        // render the tiles of the chunk
+        Graphics2D cg = (Graphics2D)chunks[chunk].getGraphics();
+        cg.setComposite(AlphaComposite.Clear);
+        cg.fillRect(0, 0, tilesToPixels(CHUNK_TILES),
+            tilesToPixels(chunkMap.getHeight()));
+        cg.setComposite(AlphaComposite.SrcOver);
+        for (int y=0; y<chunkMap.getHeight(); y++) {
+            for (int x=firstX; x<=lastX; x++) {
+                int id = chunkMap.getTileId(x, y);
+                if (id != 0) {
+                    drawTile(cg, chunkMap, id,
+                        tilesToPixels(x - firstX),
+                        tilesToPixels(y));
+                }
+            }
+        }
+        cg.dispose();
+        chunkRevisions[chunk] = revision;
+        return chunks[chunk];
+    }
+
+
+    /**
+        Gets an image for a chunk. Once MAX_CACHED_CHUNKS images
+        exist, the image of the cached chunk farthest from this
+        one is taken over.
+    */
+    private Image allocateChunk(Graphics2D g, int chunk) {
+        if (numCachedChunks < MAX_CACHED_CHUNKS) {
+            cachedChunks[numCachedChunks++] = chunk;
+            return g.getDeviceConfiguration().createCompatibleImage(
+                tilesToPixels(CHUNK_TILES),
+                tilesToPixels(chunkMap.getHeight()),
+                Transparency.BITMASK);
+        }
+
+        int farthest = 0;
+        for (int i=1; i<numCachedChunks; i++) {
+            if (Math.abs(cachedChunks[i] - chunk) >
+                Math.abs(cachedChunks[farthest] - chunk))
             {
-                ((Creature)sprite).wakeUp();
+                farthest = i;
             }
         }
+        int oldChunk = cachedChunks[farthest];
+        Image image = chunks[oldChunk];
+        chunks[oldChunk] = null;
+        cachedChunks[farthest] = chunk;
+        return image;
     }
 
 }
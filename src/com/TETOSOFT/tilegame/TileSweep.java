@@ -0,0 +1,341 @@
+package com.TETOSOFT.tilegame;
+
+import java.awt.Point;
+
+import com.TETOSOFT.graphics.Sprite;
+import com.TETOSOFT.test.GameEvents;
+
+/**
+    The TileSweep class finds the first solid tile a moving box
+    hits in a TileMap. It walks the grid like a DDA line: it steps
+    the leading edges of the box from one tile boundary to the
+    next, always taking the nearest boundary, and only checks the
+    column or row of tiles the box enters. So the tile found is
+    the nearest one along the move, however long the move is, and
+    a short move only checks the tiles next to the box. A move
+    along only x or only y crosses tiles in a straight line, so
+    the nearest solid column or row is found with the map's
+    solid bitmask, a row of tiles at a time.
+
+    <p>A hit gives the tile, the time of impact (the part of the
+    move done when the box touches the tile, from 0 to 1) and the
+    contact normal, the side of the tile that was hit. Positions
+    are rounded to whole pixels, like the rest of the collision
+    code. Tiles left and right of the map are solid; tiles above
+    and below it aren't. If a box is already in a solid tile at
+    its leading edge, it hits that tile at time 0.
+
+    <p>While a Flight Recorder recording is running,
+    sampleSweep() records one in SAMPLE_INTERVAL sweeps as a
+    TileCollision event.
+
+    <p>A TileSweep keeps the result of the last sweep, and its own
+    count of sweeps for sampling, so each thread needs its own.
+*/
+public class TileSweep {
+
+    /**
+        One in this many calls to sampleSweep() is recorded as an
+        event, while recording.
+    */
+    public static final int SAMPLE_INTERVAL = 64;
+
+    private TileMap map;
+    private Point tile = new Point();
+    private float time;
+    private int normalX;
+    private int normalY;
+    private int sampleCount;
+
+    // the sweep being done: its direction, its leading edges (in
+    // pixels) at the start and the end, and the tiles they are in
+    private int stepX;
+    private int stepY;
+    private int leadX;
+    private int lastLeadX;
+    private int leadY;
+    private int lastLeadY;
+    private int col;
+    private int lastCol;
+    private int row;
+    private int lastRow;
+
+    /**
+        Sweeps a box of the specified size from (x, y) to
+        (newX, newY). Returns true if it hits a solid tile.
+    */
+    public boolean sweep(TileMap map, float x, float y,
+        float newX, float newY, int width, int height)
+    {
+        this.map = map;
+        stepX = (newX > x) ? 1 : (newX < x) ? -1 : 0;
+        stepY = (newY > y) ? 1 : (newY < y) ? -1 : 0;
+        leadX = Math.round(stepX > 0 ? x + width - 1 : x);
+        lastLeadX = Math.round(stepX > 0 ? newX + width - 1 : newX);
+        leadY = Math.round(stepY > 0 ? y + height - 1 : y);
+        lastLeadY = Math.round(stepY > 0 ? newY + height - 1 : newY);
+        col = TileMapDrawer.pixelsToTiles(leadX);
+        lastCol = TileMapDrawer.pixelsToTiles(lastLeadX);
+        row = TileMapDrawer.pixelsToTiles(leadY);
+        lastRow = TileMapDrawer.pixelsToTiles(lastLeadY);
+
+        boolean hit = false;
+        if (stepY == 0 && stepX != 0) {
+            // moving along x: the nearest solid column can be found
+            // a row of tiles at a time
+            hit = map.findSolidColumn(col, lastCol,
+                TileMapDrawer.pixelsToTiles(y),
+                TileMapDrawer.pixelsToTiles(y + height - 1), tile);
+            if (hit) {
+                setResult(getHitTime(leadX, lastLeadX, col, tile.x, stepX),
+                    -stepX, 0);
+            }
+        }
+        else if (stepX == 0 && stepY != 0) {
+            // moving along y: the nearest solid row
+            hit = map.findSolidRow(row, lastRow,
+                TileMapDrawer.pixelsToTiles(x),
+                TileMapDrawer.pixelsToTiles(x + width - 1), tile);
+            if (hit) {
+                setResult(getHitTime(leadY, lastLeadY, row, tile.y, stepY),
+                    0, -stepY);
+            }
+        }
+        else if (stepX != 0) {
+            hit = sweepDiagonal(width, height);
+        }
+
+        if (!hit) {
+            setResult(1, 0, 0);
+        }
+        this.map = null;
+        return hit;
+    }
+
+
+    /**
+        Sweeps a box moving along both x and y, stepping the
+        leading edges to whichever tile boundary comes first.
+    */
+    private boolean sweepDiagonal(int width, int height) {
+        // already in a solid tile at a leading edge
+        if (hitColumn(col, 0, height)) {
+            setResult(0, -stepX, 0);
+            return true;
+        }
+        if (hitRow(row, 0, width)) {
+            setResult(0, 0, -stepY);
+            return true;
+        }
+
+        // step to whichever boundary the box crosses first, and
+        // check the tiles it enters when it crosses, one pixel
+        // after it touches them
+        int firstCol = col;
+        int firstRow = row;
+        while (col != lastCol || row != lastRow) {
+            float timeX = (col == lastCol) ? Float.POSITIVE_INFINITY :
+                getEntryTime(leadX, lastLeadX, col, stepX);
+            float timeY = (row == lastRow) ? Float.POSITIVE_INFINITY :
+                getEntryTime(leadY, lastLeadY, row, stepY);
+            if (timeX <= timeY) {
+                col += stepX;
+                if (hitColumn(col, timeX, height)) {
+                    // it touches the side of the tile once it has
+                    // also reached the tile's row
+                    setResult(Math.max(
+                        getTouchTime(leadX, lastLeadX, col - stepX, stepX),
+                        getReachTime(leadY, lastLeadY, firstRow, tile.y,
+                        stepY)), -stepX, 0);
+                    return true;
+                }
+            }
+            else {
+                row += stepY;
+                if (hitRow(row, timeY, width)) {
+                    setResult(Math.max(
+                        getTouchTime(leadY, lastLeadY, row - stepY, stepY),
+                        getReachTime(leadX, lastLeadX, firstCol, tile.x,
+                        stepX)), 0, -stepY);
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+
+    /**
+        Sweeps a Sprite's box from (x, y) to (newX, newY) as
+        sweep() does. While a Flight Recorder recording is running,
+        one in SAMPLE_INTERVAL calls is recorded as a TileCollision
+        event for the Sprite.
+    */
+    public boolean sampleSweep(TileMap map, float x, float y,
+        float newX, float newY, int width, int height, Sprite sprite)
+    {
+        if (!GameEvents.isRecording() ||
+            ++sampleCount % SAMPLE_INTERVAL != 0)
+        {
+            return sweep(map, x, y, newX, newY, width, height);
+        }
+
+        GameEvents.TileCollision event = new GameEvents.TileCollision();
+        event.begin();
+        boolean hit = sweep(map, x, y, newX, newY, width, height);
+        event.end();
+        if (event.shouldCommit()) {
+            event.sampleInterval = SAMPLE_INTERVAL;
+            event.sprite = sprite.getClass().getName();
+            event.distance = Math.abs(newX - x) + Math.abs(newY - y);
+            event.hit = hit;
+            event.commit();
+        }
+        return hit;
+    }
+
+
+    /**
+        Gets the tile hit by the last sweep. The Point is reused
+        by the next sweep.
+    */
+    public Point getTile() {
+        return tile;
+    }
+
+
+    /**
+        Gets the time of impact of the last sweep: the part of the
+        move done when the box touched the tile, from 0 to 1. It
+        is 1 if nothing was hit.
+    */
+    public float getTimeOfImpact() {
+        return time;
+    }
+
+
+    /**
+        Gets the x of the contact normal: -1 if the box hit the
+        left side of the tile, 1 for the right side, or else 0.
+    */
+    public int getNormalX() {
+        return normalX;
+    }
+
+
+    /**
+        Gets the y of the contact normal: -1 if the box hit the
+        top of the tile, 1 for the bottom, or else 0.
+    */
+    public int getNormalY() {
+        return normalY;
+    }
+
+
+    /**
+        Gets the time a leading edge moving from lead to lastLead,
+        starting in the specified tile, touches the tile it hits.
+    */
+    private float getHitTime(int lead, int lastLead, int startTile,
+        int hitTile, int step)
+    {
+        if (hitTile == startTile) {
+            return 0;
+        }
+        return getTouchTime(lead, lastLead, hitTile - step, step);
+    }
+
+
+    /**
+        Gets the time a leading edge moving from lead to lastLead
+        enters the next tile after the specified one: the time its
+        position rounds to the first pixel past the boundary.
+    */
+    private static float getEntryTime(int lead, int lastLead, int tile,
+        int step)
+    {
+        return getTime(lead, lastLead, getBoundary(tile, step));
+    }
+
+
+    /**
+        Gets the time a leading edge moving from lead to lastLead
+        touches the next tile after the specified one: one pixel
+        before it enters it.
+    */
+    private static float getTouchTime(int lead, int lastLead, int tile,
+        int step)
+    {
+        return getTime(lead, lastLead, getBoundary(tile, step) - step);
+    }
+
+
+    // gets the position past which a leading edge moving by step
+    // rounds into the next tile after the specified one
+    private static float getBoundary(int tile, int step) {
+        return TileMapDrawer.tilesToPixels(step > 0 ? tile + 1 : tile) -
+            0.5f;
+    }
+
+
+    // gets the time a leading edge moving from lead to lastLead is
+    // at the specified position, or 0 if it is already past it
+    private static float getTime(int lead, int lastLead, float position) {
+        return Math.max((position - lead) / (lastLead - lead), 0);
+    }
+
+
+    /**
+        Gets the time a leading edge moving from lead to lastLead,
+        starting in the specified tile, reaches a tile: 0 if it is
+        already there or past it.
+    */
+    private float getReachTime(int lead, int lastLead, int startTile,
+        int tile, int step)
+    {
+        if ((tile - startTile) * step <= 0) {
+            return 0;
+        }
+        return getEntryTime(lead, lastLead, tile - step, step);
+    }
+
+
+    // gets the tile the trailing edge of a box of the specified
+    // size is in, at the specified time, if its leading edge moves
+    // from lead to lastLead
+    private static int getTrailingTile(int lead, int lastLead, int step,
+        int size, float time)
+    {
+        return TileMapDrawer.pixelsToTiles(
+            lead + (lastLead - lead) * time - step * (size - 1));
+    }
+
+
+    // checks the tiles of a column next to the box, at the
+    // specified time. The leading row is the one the walk is in,
+    // so a row crossed at the same time counts.
+    private boolean hitColumn(int col, float time, int height) {
+        int trailingRow = getTrailingTile(leadY, lastLeadY, stepY, height,
+            time);
+        return map.findSolidTile(col, Math.min(row, trailingRow),
+            col, Math.max(row, trailingRow), tile);
+    }
+
+
+    // checks the tiles of a row next to the box, at the specified
+    // time
+    private boolean hitRow(int row, float time, int width) {
+        int trailingCol = getTrailingTile(leadX, lastLeadX, stepX, width,
+            time);
+        return map.findSolidTile(Math.min(col, trailingCol), row,
+            Math.max(col, trailingCol), row, tile);
+    }
+
+
+    private void setResult(float time, int normalX, int normalY) {
+        this.time = time;
+        this.normalX = normalX;
+        this.normalY = normalY;
+    }
+
+}
@@ -26,6 +26,9 @@ public abstract class Creature extends Sprite {
     private int state;
     private long stateTime;
 
+    // the subclass constructor used by clone(), looked up once
+    private Constructor cloneConstructor;
+
     /**
         Creates a new Creature with the specified Animations.
     */
@@ -43,14 +46,19 @@ public abstract class Creature extends Sprite {
 
     public Object clone() {
         // use reflection to create the correct subclass
-        Constructor constructor = getClass().getConstructors()[0];
+        if (cloneConstructor == null) {
+            cloneConstructor = getClass().getConstructors()[0];
+        }
         try {
-            return constructor.newInstance(new Object[] {
-                (Animation)left.clone(),
-                (Animation)right.clone(),
-                (Animation)deadLeft.clone(),
-                (Animation)deadRight.clone()
-            });
+            Creature creature = (Creature)cloneConstructor.newInstance(
+                new Object[] {
+                    (Animation)left.clone(),
+                    (Animation)right.clone(),
+                    (Animation)deadLeft.clone(),
+                    (Animation)deadRight.clone()
+                });
+            creature.cloneConstructor = cloneConstructor;
+            return creature;
         }
         catch (Exception ex) {
             // should never happen
@@ -8,16 +8,23 @@ import com.TETOSOFT.graphics.*;
 */
 public abstract class PowerUp extends Sprite {
 
+    // the subclass constructor used by clone(), looked up once
+    private Constructor cloneConstructor;
+
     public PowerUp(Animation anim) {
         super(anim);
     }
 
     public Object clone() {
         // use reflection to create the correct subclass
-        Constructor constructor = getClass().getConstructors()[0];
+        if (cloneConstructor == null) {
+            cloneConstructor = getClass().getConstructors()[0];
+        }
         try {
-            return constructor.newInstance(
+            PowerUp powerUp = (PowerUp)cloneConstructor.newInstance(
                 new Object[] {(Animation)anim.clone()});
+            powerUp.cloneConstructor = cloneConstructor;
+            return powerUp;
         }
         catch (Exception ex) {
             // should never happen